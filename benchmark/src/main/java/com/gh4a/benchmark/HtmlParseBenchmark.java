@@ -0,0 +1,207 @@
+package com.gh4a.benchmark;
+
+import com.gh4a.utils.HtmlParsers;
+
+import org.ccil.cowan.tagsoup.Parser;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the TagSoup side of HtmlUtils' HTML conversion on the JVM, using
+ * the app's own parser handling and URL resolution ({@link HtmlParsers}) on
+ * the README and comment HTML in the fixtures directory. Building the spans
+ * needs the Android framework and thus isn't covered.
+ *
+ * For comparison, the README is also run through the regex based URL
+ * rewriting it was subjected to before being parsed until URLs were resolved
+ * while parsing.
+ *
+ * Run with ./gradlew :benchmark:run, optionally passing the number of
+ * measured rounds via -Prounds=n.
+ */
+public class HtmlParseBenchmark {
+    private static final String README_BASE_URL =
+            "https://raw.githubusercontent.com/slapperwan/gh4a/master";
+    private static final int DEFAULT_ROUNDS = 5;
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * Receives the same callbacks as the app's converter, doing the
+     * framework independent part of its work.
+     */
+    private static class ConvertingHandler extends DefaultHandler {
+        private final String mBaseUrl;
+        private final StringBuilder mText = new StringBuilder();
+        private int mUrlLength;
+
+        ConvertingHandler(String baseUrl) {
+            mBaseUrl = baseUrl;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                Attributes attributes) {
+            if (localName.equalsIgnoreCase("a")) {
+                addUrl(attributes.getValue("", "href"));
+            } else if (localName.equalsIgnoreCase("img")) {
+                addUrl(attributes.getValue("", "src"));
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            mText.append(ch, start, length);
+        }
+
+        private void addUrl(String url) {
+            String resolved = HtmlParsers.resolveUrl(mBaseUrl, url);
+            if (resolved != null) {
+                mUrlLength += resolved.length();
+            }
+        }
+
+        int getResult() {
+            return mText.length() + mUrlLength;
+        }
+    }
+
+    // Keeps the JIT from optimizing the parsing away
+    private static int sSink;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        final String comment = readFixture("comment.html");
+        final String readme = readFixture("readme.html");
+
+        System.out.println(String.format(Locale.US, "comment: %d chars, README: %d chars",
+                comment.length(), readme.length()));
+
+        measure("comment, new parser per document", 5000, rounds, new Operation() {
+            @Override
+            public void run() throws Exception {
+                parse(HtmlParsers.create(), comment, null);
+            }
+        });
+        measure("comment, reused parser", 5000, rounds, new Operation() {
+            @Override
+            public void run() throws Exception {
+                Parser parser = HtmlParsers.take();
+                try {
+                    parse(parser, comment, null);
+                } finally {
+                    HtmlParsers.release(parser);
+                }
+            }
+        });
+        measure("README, new parser per document", 2000, rounds, new Operation() {
+            @Override
+            public void run() throws Exception {
+                parse(HtmlParsers.create(), readme, README_BASE_URL);
+            }
+        });
+        measure("README, reused parser", 2000, rounds, new Operation() {
+            @Override
+            public void run() throws Exception {
+                Parser parser = HtmlParsers.take();
+                try {
+                    parse(parser, readme, README_BASE_URL);
+                } finally {
+                    HtmlParsers.release(parser);
+                }
+            }
+        });
+        measure("README, regex rewrite + new parser", 2000, rounds, new Operation() {
+            @Override
+            public void run() throws Exception {
+                parse(HtmlParsers.create(), rewriteRelativeUrls(readme, README_BASE_URL), null);
+            }
+        });
+
+        if (sSink == 0) {
+            throw new IllegalStateException("Nothing was parsed");
+        }
+    }
+
+    private static void parse(Parser parser, String html, String baseUrl) throws Exception {
+        ConvertingHandler handler = new ConvertingHandler(baseUrl);
+        parser.setContentHandler(handler);
+        parser.parse(new InputSource(new StringReader(html)));
+        sSink += handler.getResult();
+    }
+
+    /**
+     * The URL rewriting formerly done by HtmlUtils.rewriteRelativeUrls()
+     * before READMEs were parsed.
+     */
+    private static String rewriteRelativeUrls(final String html, final String baseUrl) {
+        final StringBuffer sb = new StringBuffer();
+        final Pattern p = Pattern.compile("(href|src)=\"(\\S+)\"");
+        final Matcher m = p.matcher(html);
+
+        while (m.find()) {
+            String url = m.group(2);
+            if (!url.contains("://") && !url.startsWith("#")) {
+                if (url.startsWith("/")) {
+                    url = baseUrl + url;
+                } else {
+                    url = baseUrl + "/" + url;
+                }
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + "=\"" + url + "\""));
+        }
+        m.appendTail(sb);
+
+        return sb.toString();
+    }
+
+    /**
+     * Prints the best time per operation of the given number of rounds,
+     * after a warmup round.
+     */
+    private static void measure(String name, int iterations, int rounds,
+            Operation operation) throws Exception {
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                operation.run();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(String.format(Locale.US, "%-35s %10.1f us/op",
+                name, best / 1000.0 / iterations));
+    }
+
+    private static String readFixture(String name) throws IOException {
+        InputStream in = HtmlParseBenchmark.class.getResourceAsStream("/fixtures/" + name);
+        if (in == null) {
+            throw new IOException("Missing fixture " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
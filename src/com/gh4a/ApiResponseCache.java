@@ -0,0 +1,376 @@
+package com.gh4a;
+
+import android.util.Log;
+
+import com.gh4a.utils.ApiHelpers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded on-disk store of API response bodies together with the
+ * validators (ETag / Last-Modified) needed to revalidate them via
+ * conditional requests. A 304 reply lets us serve the stored body without
+ * re-downloading it and doesn't count against the rate limit.
+ */
+public class ApiResponseCache {
+    private static final String TAG = "ApiResponseCache";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX_TEMP = ".tmp";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_LINK = "Link";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    // key -> size in bytes, in LRU order
+    private LinkedHashMap<String, Long> mEntries;
+
+    public static class Entry {
+        private final InputStream mBody;
+        public final String etag;
+        public final String lastModified;
+        public final String link;
+
+        private Entry(InputStream body, String etag, String lastModified, String link) {
+            mBody = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.link = link;
+        }
+
+        public void addConditionalHeaders(HttpURLConnection connection) {
+            if (etag != null) {
+                connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+
+        /**
+         * Returns the stored body. The underlying file was opened when the
+         * entry was looked up, so a concurrent commit or trim replacing or
+         * deleting the file doesn't affect it.
+         */
+        public InputStream getBody() {
+            return mBody;
+        }
+
+        /**
+         * Releases the stored body; must be called once the entry isn't needed anymore.
+         */
+        public void close() {
+            try {
+                mBody.close();
+            } catch (IOException e) {
+                // ignored
+            }
+        }
+    }
+
+    public class Editor {
+        private final String mKey;
+        private final File mTempFile;
+        private final OutputStream mOutput;
+        private boolean mComplete;
+        private boolean mFailed;
+
+        private Editor(String key, File tempFile, OutputStream output) {
+            mKey = key;
+            mTempFile = tempFile;
+            mOutput = output;
+        }
+
+        /**
+         * Wraps the response stream so that everything read from it is
+         * copied into the cache entry being written.
+         */
+        public InputStream wrap(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) {
+                        mComplete = true;
+                    } else {
+                        write(new byte[] { (byte) b }, 0, 1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read < 0) {
+                        mComplete = true;
+                    } else {
+                        write(buffer, offset, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // Make sure trailing data the parser didn't consume still ends up in the entry
+                    if (!mComplete && !mFailed) {
+                        byte[] buffer = new byte[2048];
+                        while (read(buffer, 0, buffer.length) >= 0) {
+                            // drain
+                        }
+                    }
+                    super.close();
+                }
+
+                @Override
+                public long skip(long count) throws IOException {
+                    // skipping would leave holes in the entry, so read instead
+                    byte[] buffer = new byte[(int) Math.min(count, 2048)];
+                    int read = read(buffer, 0, buffer.length);
+                    return Math.max(read, 0);
+                }
+            };
+        }
+
+        private void write(byte[] buffer, int offset, int count) {
+            if (mFailed) {
+                return;
+            }
+            try {
+                mOutput.write(buffer, offset, count);
+            } catch (IOException e) {
+                mFailed = true;
+            }
+        }
+
+        public void commit() {
+            closeOutput();
+            if (!mComplete || mFailed) {
+                abort();
+                return;
+            }
+            synchronized (ApiResponseCache.this) {
+                File target = getFile(mKey);
+                if (mTempFile.renameTo(target)) {
+                    putEntry(mKey, target.length());
+                } else {
+                    mTempFile.delete();
+                }
+            }
+        }
+
+        public void abort() {
+            closeOutput();
+            mTempFile.delete();
+        }
+
+        private void closeOutput() {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                mFailed = true;
+            }
+        }
+    }
+
+    public ApiResponseCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    public static String makeKey(String url, String accept, String token) {
+        return ApiHelpers.md5(url + "|" + accept + "|" + (token != null ? token : ""));
+    }
+
+    public synchronized Entry get(String key) {
+        ensureInitialized();
+        if (!mEntries.containsKey(key)) {
+            return null;
+        }
+        File file = getFile(key);
+        DataInputStream is = null;
+        boolean success = false;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (is.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported cache entry format");
+            }
+            String etag = readOptionalString(is);
+            String lastModified = readOptionalString(is);
+            String link = readOptionalString(is);
+            // the body directly follows the offset field
+            is.readLong();
+            if (etag == null && lastModified == null) {
+                return null;
+            }
+            // touch entry to update LRU order
+            mEntries.get(key);
+            success = true;
+            return new Entry(is, etag, lastModified, link);
+        } catch (IOException e) {
+            Log.d(TAG, "Dropping unreadable cache entry " + key, e);
+            removeEntry(key);
+            return null;
+        } finally {
+            if (is != null && !success) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts writing a new entry for the given response, or returns null
+     * if the response carries no validators and thus is not worth caching.
+     */
+    public Editor edit(String key, HttpURLConnection connection) {
+        String etag = connection.getHeaderField(HEADER_ETAG);
+        String lastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            ensureInitialized();
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                return null;
+            }
+        }
+
+        File tempFile = new File(mDirectory, key + "." + Thread.currentThread().getId() + SUFFIX_TEMP);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            writeOptionalString(out, etag);
+            writeOptionalString(out, lastModified);
+            writeOptionalString(out, connection.getHeaderField(HEADER_LINK));
+            // body offset = bytes written so far plus the offset field itself
+            out.writeLong(out.size() + 8);
+            return new Editor(key, tempFile, out);
+        } catch (IOException e) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // ignored
+                }
+            }
+            tempFile.delete();
+            return null;
+        }
+    }
+
+    public synchronized void remove(String key) {
+        ensureInitialized();
+        removeEntry(key);
+    }
+
+    public synchronized void clear() {
+        ensureInitialized();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key);
+    }
+
+    private void ensureInitialized() {
+        if (mEntries != null) {
+            return;
+        }
+        mEntries = new LinkedHashMap<>(32, 0.75f, true);
+        mSize = 0;
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX_TEMP)) {
+                // leftover from an interrupted write
+                file.delete();
+            } else {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private void putEntry(String key, long size) {
+        Long oldSize = mEntries.put(key, size);
+        if (oldSize != null) {
+            mSize -= oldSize;
+        }
+        mSize += size;
+        trimToSize();
+    }
+
+    private void removeEntry(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        getFile(key).delete();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iter = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            getFile(entry.getKey()).delete();
+            mSize -= entry.getValue();
+            iter.remove();
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
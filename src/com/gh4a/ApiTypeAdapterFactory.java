@@ -0,0 +1,448 @@
+package com.gh4a;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.eclipse.egit.github.core.Issue;
+import org.eclipse.egit.github.core.Label;
+import org.eclipse.egit.github.core.Milestone;
+import org.eclipse.egit.github.core.Notification;
+import org.eclipse.egit.github.core.NotificationSubject;
+import org.eclipse.egit.github.core.Permissions;
+import org.eclipse.egit.github.core.PullRequest;
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.UserPlan;
+import org.eclipse.egit.github.core.client.DateFormatter;
+import org.eclipse.egit.github.core.event.CommitCommentPayload;
+import org.eclipse.egit.github.core.event.CreatePayload;
+import org.eclipse.egit.github.core.event.DeletePayload;
+import org.eclipse.egit.github.core.event.DownloadPayload;
+import org.eclipse.egit.github.core.event.Event;
+import org.eclipse.egit.github.core.event.EventPayload;
+import org.eclipse.egit.github.core.event.EventRepository;
+import org.eclipse.egit.github.core.event.FollowPayload;
+import org.eclipse.egit.github.core.event.ForkApplyPayload;
+import org.eclipse.egit.github.core.event.ForkPayload;
+import org.eclipse.egit.github.core.event.GistPayload;
+import org.eclipse.egit.github.core.event.GollumPayload;
+import org.eclipse.egit.github.core.event.IssueCommentPayload;
+import org.eclipse.egit.github.core.event.IssuesPayload;
+import org.eclipse.egit.github.core.event.MemberPayload;
+import org.eclipse.egit.github.core.event.PublicPayload;
+import org.eclipse.egit.github.core.event.PullRequestPayload;
+import org.eclipse.egit.github.core.event.PullRequestReviewCommentPayload;
+import org.eclipse.egit.github.core.event.PushPayload;
+import org.eclipse.egit.github.core.event.ReleasePayload;
+import org.eclipse.egit.github.core.event.TeamAddPayload;
+import org.eclipse.egit.github.core.event.WatchPayload;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hand-written streaming adapters for the models that show up in large
+ * lists (events, issues, repositories, users and notifications). They
+ * replace Gson's reflective field binding and, for events, egit's
+ * EventFormatter, which builds a full JSON tree for every event and then
+ * deserializes it twice.
+ */
+public class ApiTypeAdapterFactory implements TypeAdapterFactory {
+    private static final HashMap<String, Class<? extends EventPayload>> PAYLOAD_TYPES =
+            new HashMap<>();
+    static {
+        PAYLOAD_TYPES.put(Event.TYPE_COMMIT_COMMENT, CommitCommentPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_CREATE, CreatePayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_DELETE, DeletePayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_DOWNLOAD, DownloadPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_FOLLOW, FollowPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_FORK, ForkPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_FORK_APPLY, ForkApplyPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_GIST, GistPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_GOLLUM, GollumPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_ISSUE_COMMENT, IssueCommentPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_ISSUES, IssuesPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_MEMBER, MemberPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_PUBLIC, PublicPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_PULL_REQUEST, PullRequestPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_PULL_REQUEST_REVIEW_COMMENT,
+                PullRequestReviewCommentPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_PUSH, PushPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_RELEASE, ReleasePayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_TEAM_ADD, TeamAddPayload.class);
+        PAYLOAD_TYPES.put(Event.TYPE_WATCH, WatchPayload.class);
+    }
+
+    private static final Gson sGson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new DateFormatter())
+            .registerTypeAdapterFactory(new ApiTypeAdapterFactory())
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .serializeNulls()
+            .create();
+
+    /**
+     * Returns the shared Gson instance, configured like egit's
+     * GsonUtils.createGson(true) (which the client uses), with the
+     * streaming adapters registered.
+     */
+    public static Gson getGson() {
+        return sGson;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> rawType = type.getRawType();
+        final TypeAdapter<?> adapter;
+        if (rawType == Event.class) {
+            adapter = new EventAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(Event.class)));
+        } else if (rawType == Issue.class) {
+            adapter = new IssueAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(Issue.class)));
+        } else if (rawType == Repository.class) {
+            adapter = new RepositoryAdapter(gson,
+                    gson.getDelegateAdapter(this, TypeToken.get(Repository.class)));
+        } else if (rawType == User.class) {
+            adapter = new UserAdapter(gson, gson.getDelegateAdapter(this, TypeToken.get(User.class)));
+        } else if (rawType == Notification.class) {
+            adapter = new NotificationAdapter(gson,
+                    gson.getDelegateAdapter(this, TypeToken.get(Notification.class)));
+        } else {
+            return null;
+        }
+        return (TypeAdapter<T>) adapter;
+    }
+
+    /**
+     * Base for the object adapters: handles null objects, skips unknown and
+     * null-valued fields (matching the reflective adapter, which leaves the
+     * field's default value in place) and delegates writing to the reflective
+     * adapter, as serialization isn't performance critical for us.
+     */
+    private abstract static class ObjectAdapter<T> extends TypeAdapter<T> {
+        protected final Gson mGson;
+        private final TypeAdapter<T> mDelegate;
+        private TypeAdapter<Date> mDateAdapter;
+
+        ObjectAdapter(Gson gson, TypeAdapter<T> delegate) {
+            mGson = gson;
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            mDelegate.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            T object = createInstance();
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.skipValue();
+                } else if (!readField(in, name, object)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return object;
+        }
+
+        protected abstract T createInstance();
+
+        /**
+         * @return true if the field was consumed, false if it should be skipped
+         */
+        protected abstract boolean readField(JsonReader in, String name, T object)
+                throws IOException;
+
+        protected Date readDate(JsonReader in) throws IOException {
+            if (mDateAdapter == null) {
+                mDateAdapter = mGson.getAdapter(Date.class);
+            }
+            return mDateAdapter.read(in);
+        }
+
+        protected User readUser(JsonReader in) throws IOException {
+            return mGson.getAdapter(User.class).read(in);
+        }
+
+        protected Repository readRepository(JsonReader in) throws IOException {
+            return mGson.getAdapter(Repository.class).read(in);
+        }
+
+        protected <V> V read(JsonReader in, Class<V> clazz) throws IOException {
+            return mGson.getAdapter(clazz).read(in);
+        }
+
+        protected <V> V read(JsonReader in, TypeToken<V> type) throws IOException {
+            return mGson.getAdapter(type).read(in);
+        }
+    }
+
+    private static class EventAdapter extends ObjectAdapter<Event> {
+        EventAdapter(Gson gson, TypeAdapter<Event> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            Event event = new Event();
+            // payload of an event whose type wasn't known yet when reaching the payload
+            JsonElement pendingPayload = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.skipValue();
+                } else if (!"payload".equals(name)) {
+                    if (!readField(in, name, event)) {
+                        in.skipValue();
+                    }
+                } else if (event.getType() != null) {
+                    event.setPayload(read(in, getPayloadType(event)));
+                } else {
+                    // GitHub sends the type first, but don't rely on it
+                    pendingPayload = read(in, JsonElement.class);
+                }
+            }
+            in.endObject();
+
+            if (pendingPayload != null) {
+                event.setPayload(mGson.fromJson(pendingPayload, getPayloadType(event)));
+            }
+            return event;
+        }
+
+        @Override
+        protected Event createInstance() {
+            return new Event();
+        }
+
+        @Override
+        protected boolean readField(JsonReader in, String name, Event event) throws IOException {
+            switch (name) {
+                case "id": event.setId(in.nextString()); break;
+                case "type": event.setType(in.nextString()); break;
+                case "public": event.setPublic(in.nextBoolean()); break;
+                case "actor": event.setActor(readUser(in)); break;
+                case "org": event.setOrg(readUser(in)); break;
+                case "repo": event.setRepo(read(in, EventRepository.class)); break;
+                case "created_at": event.setCreatedAt(readDate(in)); break;
+                default: return false;
+            }
+            return true;
+        }
+
+        private static Class<? extends EventPayload> getPayloadType(Event event) {
+            Class<? extends EventPayload> type = PAYLOAD_TYPES.get(event.getType());
+            return type != null ? type : EventPayload.class;
+        }
+    }
+
+    private static class IssueAdapter extends ObjectAdapter<Issue> {
+        private static final TypeToken<List<Label>> LABEL_LIST_TYPE =
+                new TypeToken<List<Label>>() {};
+        private static final TypeToken<List<User>> USER_LIST_TYPE =
+                new TypeToken<List<User>>() {};
+
+        IssueAdapter(Gson gson, TypeAdapter<Issue> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        protected Issue createInstance() {
+            return new Issue();
+        }
+
+        @Override
+        protected boolean readField(JsonReader in, String name, Issue issue) throws IOException {
+            switch (name) {
+                case "id": issue.setId(in.nextLong()); break;
+                case "number": issue.setNumber(in.nextInt()); break;
+                case "comments": issue.setComments(in.nextInt()); break;
+                case "locked": issue.setLocked(in.nextBoolean()); break;
+                case "state": issue.setState(in.nextString()); break;
+                case "title": issue.setTitle(in.nextString()); break;
+                case "body": issue.setBody(in.nextString()); break;
+                case "body_html": issue.setBodyHtml(in.nextString()); break;
+                case "body_text": issue.setBodyText(in.nextString()); break;
+                case "url": issue.setUrl(in.nextString()); break;
+                case "html_url": issue.setHtmlUrl(in.nextString()); break;
+                case "created_at": issue.setCreatedAt(readDate(in)); break;
+                case "updated_at": issue.setUpdatedAt(readDate(in)); break;
+                case "closed_at": issue.setClosedAt(readDate(in)); break;
+                case "user": issue.setUser(readUser(in)); break;
+                case "closed_by": issue.setClosedBy(readUser(in)); break;
+                case "assignees": issue.setAssignees(read(in, USER_LIST_TYPE)); break;
+                case "labels": issue.setLabels(read(in, LABEL_LIST_TYPE)); break;
+                case "milestone": issue.setMilestone(read(in, Milestone.class)); break;
+                case "pull_request": issue.setPullRequest(read(in, PullRequest.class)); break;
+                default: return false;
+            }
+            return true;
+        }
+    }
+
+    private static class RepositoryAdapter extends ObjectAdapter<Repository> {
+        // Repository has no setter for this one
+        private static Field sPermissionsField;
+
+        RepositoryAdapter(Gson gson, TypeAdapter<Repository> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        protected Repository createInstance() {
+            return new Repository();
+        }
+
+        @Override
+        protected boolean readField(JsonReader in, String name, Repository repo)
+                throws IOException {
+            switch (name) {
+                case "id": repo.setId(in.nextLong()); break;
+                case "name": repo.setName(in.nextString()); break;
+                case "owner": repo.setOwner(readUser(in)); break;
+                case "private": repo.setPrivate(in.nextBoolean()); break;
+                case "fork": repo.setFork(in.nextBoolean()); break;
+                case "description": repo.setDescription(in.nextString()); break;
+                case "homepage": repo.setHomepage(in.nextString()); break;
+                case "language": repo.setLanguage(in.nextString()); break;
+                case "default_branch": repo.setDefaultBranch(in.nextString()); break;
+                case "url": repo.setUrl(in.nextString()); break;
+                case "html_url": repo.setHtmlUrl(in.nextString()); break;
+                case "clone_url": repo.setCloneUrl(in.nextString()); break;
+                case "git_url": repo.setGitUrl(in.nextString()); break;
+                case "ssh_url": repo.setSshUrl(in.nextString()); break;
+                case "svn_url": repo.setSvnUrl(in.nextString()); break;
+                case "mirror_url": repo.setMirrorUrl(in.nextString()); break;
+                case "has_issues": repo.setHasIssues(in.nextBoolean()); break;
+                case "has_wiki": repo.setHasWiki(in.nextBoolean()); break;
+                case "has_downloads": repo.setHasDownloads(in.nextBoolean()); break;
+                case "forks": repo.setForks(in.nextInt()); break;
+                case "watchers": repo.setWatchers(in.nextInt()); break;
+                case "open_issues": repo.setOpenIssues(in.nextInt()); break;
+                case "size": repo.setSize(in.nextInt()); break;
+                case "created_at": repo.setCreatedAt(readDate(in)); break;
+                case "updated_at": repo.setUpdatedAt(readDate(in)); break;
+                case "pushed_at": repo.setPushedAt(readDate(in)); break;
+                case "parent": repo.setParent(readRepository(in)); break;
+                case "source": repo.setSource(readRepository(in)); break;
+                case "permissions":
+                    setPermissions(repo, read(in, Permissions.class));
+                    break;
+                default: return false;
+            }
+            return true;
+        }
+
+        private static void setPermissions(Repository repo, Permissions permissions) {
+            try {
+                if (sPermissionsField == null) {
+                    Field field = Repository.class.getDeclaredField("permissions");
+                    field.setAccessible(true);
+                    sPermissionsField = field;
+                }
+                sPermissionsField.set(repo, permissions);
+            } catch (NoSuchFieldException | IllegalAccessException e) {
+                // not much we can do about it
+            }
+        }
+    }
+
+    private static class UserAdapter extends ObjectAdapter<User> {
+        UserAdapter(Gson gson, TypeAdapter<User> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        protected User createInstance() {
+            return new User();
+        }
+
+        @Override
+        protected boolean readField(JsonReader in, String name, User user) throws IOException {
+            switch (name) {
+                case "id": user.setId(in.nextInt()); break;
+                case "login": user.setLogin(in.nextString()); break;
+                case "name": user.setName(in.nextString()); break;
+                case "type": user.setType(in.nextString()); break;
+                case "avatar_url": user.setAvatarUrl(in.nextString()); break;
+                case "gravatar_id": user.setGravatarId(in.nextString()); break;
+                case "url": user.setUrl(in.nextString()); break;
+                case "html_url": user.setHtmlUrl(in.nextString()); break;
+                case "email": user.setEmail(in.nextString()); break;
+                case "bio": user.setBio(in.nextString()); break;
+                case "blog": user.setBlog(in.nextString()); break;
+                case "company": user.setCompany(in.nextString()); break;
+                case "location": user.setLocation(in.nextString()); break;
+                case "hireable": user.setHireable(in.nextBoolean()); break;
+                case "followers": user.setFollowers(in.nextInt()); break;
+                case "following": user.setFollowing(in.nextInt()); break;
+                case "collaborators": user.setCollaborators(in.nextInt()); break;
+                case "disk_usage": user.setDiskUsage(in.nextInt()); break;
+                case "public_repos": user.setPublicRepos(in.nextInt()); break;
+                case "public_gists": user.setPublicGists(in.nextInt()); break;
+                case "private_gists": user.setPrivateGists(in.nextInt()); break;
+                case "owned_private_repos": user.setOwnedPrivateRepos(in.nextInt()); break;
+                case "total_private_repos": user.setTotalPrivateRepos(in.nextInt()); break;
+                case "created_at": user.setCreatedAt(readDate(in)); break;
+                case "plan": user.setPlan(read(in, UserPlan.class)); break;
+                default: return false;
+            }
+            return true;
+        }
+    }
+
+    private static class NotificationAdapter extends ObjectAdapter<Notification> {
+        NotificationAdapter(Gson gson, TypeAdapter<Notification> delegate) {
+            super(gson, delegate);
+        }
+
+        @Override
+        protected Notification createInstance() {
+            return new Notification();
+        }
+
+        @Override
+        protected boolean readField(JsonReader in, String name, Notification notification)
+                throws IOException {
+            switch (name) {
+                case "id": notification.setId(in.nextString()); break;
+                case "reason": notification.setReason(in.nextString()); break;
+                case "unread": notification.setUnread(in.nextBoolean()); break;
+                case "url": notification.setUrl(in.nextString()); break;
+                case "updated_at": notification.setUpdatedAt(readDate(in)); break;
+                case "last_read_at": notification.setLastReadAt(readDate(in)); break;
+                case "repository": notification.setRepository(readRepository(in)); break;
+                case "subject":
+                    notification.setSubject(read(in, NotificationSubject.class));
+                    break;
+                default: return false;
+            }
+            return true;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.gh4a.activities.UserActivity;
 import com.gh4a.activities.WikiListActivity;
 import com.gh4a.loader.CommitCommentListLoader;
 import com.gh4a.loader.CommitLoader;
+import com.gh4a.loader.ParallelCalls;
 import com.gh4a.loader.PullRequestCommentsLoader;
 import com.gh4a.loader.PullRequestFilesLoader;
 import com.gh4a.loader.PullRequestLoader;
@@ -53,6 +54,7 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 public class BrowseFilter extends AppCompatActivity {
@@ -350,17 +352,36 @@ public class BrowseFilter extends AppCompatActivity {
                 return null;
             }
 
-            String sha = getSha();
-            if (sha == null || isFinishing()) {
-                return null;
-            }
-
             if (FileUtils.isImage(file.getFilename())) {
+                String sha = getSha();
+                if (sha == null || isFinishing()) {
+                    return null;
+                }
                 return FileViewerActivity.makeIntent(BrowseFilter.this, mRepoOwner, mRepoName,
                         sha, file.getFilename());
             }
 
-            return getLaunchIntent(sha, file, getComments(), mDiffId);
+            ParallelCalls calls = new ParallelCalls();
+            ParallelCalls.Result<String> sha = calls.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return getSha();
+                }
+            });
+            ParallelCalls.Result<List<CommitComment>> comments =
+                    calls.add(new Callable<List<CommitComment>>() {
+                @Override
+                public List<CommitComment> call() throws Exception {
+                    return getComments();
+                }
+            });
+            calls.await();
+
+            if (sha.get() == null || isFinishing()) {
+                return null;
+            }
+
+            return getLaunchIntent(sha.get(), file, comments.get(), mDiffId);
         }
 
         protected abstract List<CommitFile> getFiles() throws Exception;
@@ -1,13 +1,26 @@
 package com.gh4a;
 
+import android.os.SystemClock;
+
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
 import org.eclipse.egit.github.core.client.PageIterator;
 import org.eclipse.egit.github.core.client.PagedRequest;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 
 public class DefaultClient extends GitHubClient {
     private static final String DEFAULT_HEADER_ACCEPT = "application/vnd.github.v3.full+json";
+    private static final long MAX_RESPONSE_CACHE_SIZE = 10 * 1024 * 1024;
+
+    private static ApiResponseCache sResponseCache;
+    private static final InFlightRequests sInFlightRequests = new InFlightRequests();
+
+    private String mToken;
 
     public DefaultClient() {
         this(DEFAULT_HEADER_ACCEPT);
@@ -16,6 +29,22 @@ public class DefaultClient extends GitHubClient {
     public DefaultClient(String headerAccept) {
         super();
         setHeaderAccept(headerAccept);
+        gson = ApiTypeAdapterFactory.getGson();
+    }
+
+    public static synchronized ApiResponseCache getResponseCache() {
+        if (sResponseCache == null) {
+            Gh4Application app = Gh4Application.get();
+            sResponseCache = new ApiResponseCache(new File(app.getCacheDir(), "api-responses"),
+                    MAX_RESPONSE_CACHE_SIZE);
+        }
+        return sResponseCache;
+    }
+
+    @Override
+    public GitHubClient setOAuth2Token(String token) {
+        mToken = token;
+        return super.setOAuth2Token(token);
     }
 
     @Override
@@ -25,6 +54,107 @@ public class DefaultClient extends GitHubClient {
         return request;
     }
 
+    @Override
+    protected HttpURLConnection createConnection(String uri, String method) throws IOException {
+        RateLimitScheduler.get().beforeRequest(RateLimitScheduler.getBucketForUrl(uri));
+        return super.createConnection(uri, method);
+    }
+
+    @Override
+    protected GitHubClient updateRateLimits(HttpURLConnection request) {
+        RateLimitScheduler.get().onResponse(
+                RateLimitScheduler.getBucketForUrl(request.getURL().getPath()), request);
+        return super.updateRateLimits(request);
+    }
+
+    @Override
+    public GitHubResponse get(final GitHubRequest request) throws IOException {
+        String accept = request.getResponseContentType();
+        String key = METHOD_GET + " " + request.generateUri()
+                + " " + (accept != null ? accept : getHeaderAccept())
+                + " " + request.getType() + " " + mToken
+                // the scheduler delays or drops low priority requests, which normal
+                // priority callers must not inherit (and vice versa)
+                + " " + RateLimitScheduler.isLowPriority();
+        return sInFlightRequests.execute(key, new InFlightRequests.Request() {
+            @Override
+            public GitHubResponse execute() throws IOException {
+                return get(request, true);
+            }
+        });
+    }
+
+    private GitHubResponse get(GitHubRequest request, boolean retryOnRateLimit)
+            throws IOException {
+        HttpURLConnection conn = createGet(request.generateUri());
+        ApiResponseCache.Entry cached = null;
+        try {
+            String accept = request.getResponseContentType();
+            if (accept != null) {
+                conn.setRequestProperty(HEADER_ACCEPT, accept);
+            }
+
+            ApiResponseCache cache = getResponseCache();
+            String cacheKey = ApiResponseCache.makeKey(conn.getURL().toExternalForm(),
+                    conn.getRequestProperty(HEADER_ACCEPT), mToken);
+            cached = cache.get(cacheKey);
+            if (cached != null) {
+                cached.addConditionalHeaders(conn);
+            }
+
+            final int code = conn.getResponseCode();
+            updateRateLimits(conn);
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                return new CachedResponse(conn, getBody(request, cached.getBody()), cached);
+            } else if (isOk(code)) {
+                return new GitHubResponse(conn, getCachingBody(request, conn, cache, cacheKey));
+            } else if (isEmpty(code)) {
+                return new GitHubResponse(conn, null);
+            } else if (code == HttpURLConnection.HTTP_FORBIDDEN && isRateLimitExhausted(conn)) {
+                if (retryOnRateLimit) {
+                    // The scheduler now knows about the exhausted budget and either waits
+                    // for it to be reset or fails without sending another request
+                    return get(request, false);
+                }
+                String bucket = RateLimitScheduler.getBucketForUrl(conn.getURL().getPath());
+                throw new RateLimitExceededException(bucket, SystemClock.elapsedRealtime()
+                        + RateLimitScheduler.get().getTimeToReset(bucket));
+            } else {
+                throw createException(getStream(conn), code, conn.getResponseMessage());
+            }
+        } finally {
+            if (cached != null) {
+                cached.close();
+            }
+            conn.disconnect();
+        }
+    }
+
+    private static boolean isRateLimitExhausted(HttpURLConnection conn) {
+        return "0".equals(conn.getHeaderField("X-RateLimit-Remaining"));
+    }
+
+    private Object getCachingBody(GitHubRequest request, HttpURLConnection conn,
+            ApiResponseCache cache, String cacheKey) throws IOException {
+        InputStream stream = getStream(conn);
+        ApiResponseCache.Editor editor = request.getType() != null
+                ? cache.edit(cacheKey, conn) : null;
+        if (editor == null) {
+            cache.remove(cacheKey);
+            return getBody(request, stream);
+        }
+
+        try {
+            Object body = getBody(request, editor.wrap(stream));
+            editor.commit();
+            return body;
+        } catch (IOException | RuntimeException e) {
+            editor.abort();
+            throw e;
+        }
+    }
+
     @Override
     protected boolean isError(int code) {
         if (code == 401) {
@@ -37,4 +167,27 @@ public class DefaultClient extends GitHubClient {
     public <V> PageIterator<V> createPageIterator(PagedRequest<V> request) {
         return new PageIteratorWithSaveableState<>(request, this);
     }
+
+    /**
+     * Response for a 304 reply, whose body was served from the response cache.
+     * GitHub doesn't necessarily repeat the paging headers on 304 replies,
+     * so those are taken from the cached entry as well.
+     */
+    private static class CachedResponse extends GitHubResponse {
+        private final ApiResponseCache.Entry mEntry;
+
+        public CachedResponse(HttpURLConnection response, Object body,
+                ApiResponseCache.Entry entry) {
+            super(response, body);
+            mEntry = entry;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            if ("Link".equalsIgnoreCase(name)) {
+                return mEntry.link;
+            }
+            return super.getHeader(name);
+        }
+    }
 }
@@ -25,7 +25,11 @@ import android.os.Build;
 import android.text.TextUtils;
 
 import com.crashlytics.android.Crashlytics;
+import com.gh4a.db.LoaderCache;
 import com.gh4a.fragment.SettingsFragment;
+import com.gh4a.loader.PagedListSnapshot;
+import com.gh4a.utils.ImageCache;
+import com.gh4a.utils.RenderedHtmlCache;
 
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.service.CollaboratorService;
@@ -197,6 +201,16 @@ public class Gh4Application extends Application implements OnSharedPreferenceCha
 
     public void logout() {
         setLogin(null, null);
+        new Thread() {
+            @Override
+            public void run() {
+                DefaultClient.getResponseCache().clear();
+                LoaderCache.get(Gh4Application.this).clear();
+                PagedListSnapshot.clear(Gh4Application.this);
+                RenderedHtmlCache.clear(Gh4Application.this);
+                ImageCache.get(Gh4Application.this).clear();
+            }
+        }.start();
     }
 
     private SharedPreferences getPrefs() {
@@ -0,0 +1,101 @@
+package com.gh4a;
+
+import org.eclipse.egit.github.core.client.GitHubResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces identical requests that are running concurrently: the first
+ * caller performs the request, everyone else asking for the same key while
+ * it's in flight waits for and shares its parsed result.
+ */
+public class InFlightRequests {
+    public interface Request {
+        GitHubResponse execute() throws IOException;
+    }
+
+    private static class Call {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        GitHubResponse mResponse;
+        IOException mIoException;
+        RuntimeException mRuntimeException;
+    }
+
+    private final HashMap<String, Call> mCalls = new HashMap<>();
+
+    public GitHubResponse execute(String key, Request request) throws IOException {
+        final Call call;
+        final boolean isOwner;
+        synchronized (mCalls) {
+            Call existing = mCalls.get(key);
+            if (existing != null) {
+                call = existing;
+                isOwner = false;
+            } else {
+                call = new Call();
+                mCalls.put(key, call);
+                isOwner = true;
+            }
+        }
+
+        if (isOwner) {
+            try {
+                call.mResponse = request.execute();
+            } catch (IOException e) {
+                call.mIoException = e;
+            } catch (RuntimeException e) {
+                call.mRuntimeException = e;
+            } finally {
+                synchronized (mCalls) {
+                    mCalls.remove(key);
+                }
+                call.mDone.countDown();
+            }
+        } else {
+            try {
+                call.mDone.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        if (call.mIoException != null) {
+            throw call.mIoException;
+        }
+        if (call.mRuntimeException != null) {
+            throw call.mRuntimeException;
+        }
+        return isOwner ? call.mResponse : new SharedResponse(call.mResponse);
+    }
+
+    /**
+     * Response handed out to the callers that joined an in-flight request.
+     * List bodies are copied, as callers commonly modify the returned
+     * collections; the contained objects are shared.
+     */
+    private static class SharedResponse extends GitHubResponse {
+        private final GitHubResponse mOriginal;
+
+        public SharedResponse(GitHubResponse original) {
+            super(null, copyBody(original.getBody()));
+            mOriginal = original;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mOriginal.getHeader(name);
+        }
+
+        private static Object copyBody(Object body) {
+            if (body instanceof Collection) {
+                return new ArrayList<>((Collection<?>) body);
+            }
+            return body;
+        }
+    }
+}
@@ -2,10 +2,25 @@ package com.gh4a;
 
 import android.os.Bundle;
 
+import com.gh4a.loader.ParallelCalls;
+
+import org.eclipse.egit.github.core.IResourceProvider;
 import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.NoSuchPageException;
 import org.eclipse.egit.github.core.client.PageIterator;
 import org.eclipse.egit.github.core.client.PagedRequest;
 
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
 public class PageIteratorWithSaveableState<V> extends PageIterator<V> {
     private static final String STATE_KEY_NEXT_PAGE = "next_page";
     private static final String STATE_KEY_LAST_PAGE = "last_page";
@@ -13,10 +28,104 @@ public class PageIteratorWithSaveableState<V> extends PageIterator<V> {
     private static final String STATE_KEY_LAST = "last";
     private static final String STATE_KEY_PAGE_SIZE = "page_size";
 
+    private static final int MAX_CONCURRENT_PAGES = 4;
+    private static final Pattern PAGE_PARAM_PATTERN = Pattern.compile("([?&])page=\\d+");
+
+    private static final ThreadLocal<Boolean> sParallelDrain = new ThreadLocal<>();
+
+    public interface PageDrain<T> {
+        T load() throws IOException;
+    }
+
+    /**
+     * Runs the given call, which is expected to load a complete list via
+     * one of the services' getXXX() methods, with all pages after the first
+     * one being fetched in parallel. Must only be used for calls that load
+     * all pages, as the first page fetch loads all remaining pages.
+     */
+    public static <T> T loadAllPagesInParallel(PageDrain<T> drain) throws IOException {
+        Boolean wasEnabled = sParallelDrain.get();
+        sParallelDrain.set(Boolean.TRUE);
+        try {
+            return drain.load();
+        } finally {
+            if (wasEnabled == null) {
+                sParallelDrain.remove();
+            }
+        }
+    }
+
     public PageIteratorWithSaveableState(PagedRequest<V> request, GitHubClient client) {
         super(request, client);
     }
 
+    @Override
+    public Collection<V> next() {
+        Collection<V> firstPage = super.next();
+        if (sParallelDrain.get() == null || next == null || last == null || lastPage < nextPage) {
+            return firstPage;
+        }
+
+        // The last page link tells us about all remaining pages, so fetch them at once
+        List<V> result = new ArrayList<>(firstPage);
+        try {
+            for (int page = nextPage; page <= lastPage; page += MAX_CONCURRENT_PAGES) {
+                ParallelCalls calls = new ParallelCalls();
+                List<ParallelCalls.Result<Collection<V>>> pages = new ArrayList<>();
+                for (int i = page; i <= lastPage && i < page + MAX_CONCURRENT_PAGES; i++) {
+                    final int pageNumber = i;
+                    pages.add(calls.add(new Callable<Collection<V>>() {
+                        @Override
+                        public Collection<V> call() throws IOException {
+                            return fetchPage(pageNumber);
+                        }
+                    }));
+                }
+                calls.await();
+                for (ParallelCalls.Result<Collection<V>> pageResult : pages) {
+                    result.addAll(pageResult.get());
+                }
+            }
+        } catch (IOException e) {
+            throw new NoSuchPageException(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        next = null;
+        nextPage = -1;
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<V> fetchPage(int page) throws IOException {
+        String uri = PAGE_PARAM_PATTERN.matcher(last).replaceFirst("$1page=" + page);
+        try {
+            uri = new URL(uri).getFile();
+        } catch (MalformedURLException e) {
+            // use as is
+        }
+
+        PagedRequest<V> pageRequest = new PagedRequest<>(page, request.getPageSize());
+        pageRequest.setUri(uri);
+        pageRequest.setType(request.getType());
+        pageRequest.setArrayType(request.getArrayType());
+        pageRequest.setResponseContentType(request.getResponseContentType());
+
+        GitHubResponse response = client.get(pageRequest);
+        Object body = response.getBody();
+        if (body instanceof Collection) {
+            return (Collection<V>) body;
+        } else if (body instanceof IResourceProvider) {
+            return ((IResourceProvider<V>) body).getResources();
+        } else if (body != null) {
+            return Collections.singletonList((V) body);
+        }
+        return Collections.emptyList();
+    }
+
     public Bundle saveState() {
         Bundle state = new Bundle();
         state.putInt(STATE_KEY_NEXT_PAGE, nextPage);
@@ -27,19 +136,17 @@ public class PageIteratorWithSaveableState<V> extends PageIterator<V> {
         return state;
     }
 
-    public void restoreState(Bundle state) {
+    /**
+     * @return whether the state could be restored
+     */
+    public boolean restoreState(Bundle state) {
         if (state == null || state.getInt(STATE_KEY_PAGE_SIZE) != request.getPageSize()) {
-            return;
+            return false;
         }
         nextPage = state.getInt(STATE_KEY_NEXT_PAGE, nextPage);
-        lastPage = state.getInt(STATE_KEY_NEXT_PAGE, lastPage);
-        String newNext = state.getString(STATE_KEY_NEXT);
-        String newLast = state.getString(STATE_KEY_NEXT);
-        if (newNext != null) {
-            next = newNext;
-        }
-        if (newLast != null) {
-            last = newLast;
-        }
+        lastPage = state.getInt(STATE_KEY_LAST_PAGE, lastPage);
+        next = state.getString(STATE_KEY_NEXT);
+        last = state.getString(STATE_KEY_LAST);
+        return true;
     }
 }
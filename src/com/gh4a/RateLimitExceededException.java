@@ -0,0 +1,29 @@
+package com.gh4a;
+
+import android.os.SystemClock;
+
+import java.io.IOException;
+
+public class RateLimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String mBucket;
+    private final long mResetTime;
+
+    public RateLimitExceededException(String bucket, long resetTime) {
+        super("API rate limit exceeded for " + bucket + " requests");
+        mBucket = bucket;
+        mResetTime = resetTime;
+    }
+
+    public String getBucket() {
+        return mBucket;
+    }
+
+    /**
+     * @return time until the rate limit is reset, in milliseconds
+     */
+    public long getTimeToReset() {
+        return Math.max(0, mResetTime - SystemClock.elapsedRealtime());
+    }
+}
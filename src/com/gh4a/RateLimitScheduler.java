@@ -0,0 +1,178 @@
+package com.gh4a;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+
+/**
+ * Tracks the GitHub API rate limit budget per resource bucket (core and search
+ * have separate limits) from the X-RateLimit-* response headers, and uses it to
+ * throttle requests before they're sent: requests are delayed for a short while
+ * if the budget is about to reset anyway, and low priority requests are spaced
+ * out or dropped once the budget runs low, so they can't starve the requests
+ * the user is actually waiting for.
+ */
+public class RateLimitScheduler {
+    private static final String TAG = "RateLimitScheduler";
+
+    public static final String BUCKET_CORE = "core";
+    public static final String BUCKET_SEARCH = "search";
+
+    private static final String HEADER_LIMIT = "X-RateLimit-Limit";
+    private static final String HEADER_REMAINING = "X-RateLimit-Remaining";
+    private static final String HEADER_RESET = "X-RateLimit-Reset";
+    private static final String HEADER_RESOURCE = "X-RateLimit-Resource";
+
+    // Maximum time we block a request waiting for the budget to reset
+    private static final long MAX_WAIT_MS = 10 * 1000;
+    // Maximum delay used for spacing out low priority requests
+    private static final long MAX_LOW_PRIORITY_DELAY_MS = 3 * 1000;
+    // Low priority requests are throttled if less than this fraction of the budget is left
+    private static final int LOW_PRIORITY_RESERVE_PERCENT = 20;
+
+    private static final RateLimitScheduler sInstance = new RateLimitScheduler();
+    private static final ThreadLocal<Boolean> sLowPriority = new ThreadLocal<>();
+
+    private static class Bucket {
+        int limit = -1;
+        int remaining = -1;
+        // in elapsedRealtime() time base
+        long resetTime;
+    }
+
+    private final HashMap<String, Bucket> mBuckets = new HashMap<>();
+
+    public static RateLimitScheduler get() {
+        return sInstance;
+    }
+
+    /**
+     * Marks all requests made from the current thread as low priority (or
+     * normal priority again). Used by loaders for data that is nice to have,
+     * but not essential for the screen the user looks at.
+     */
+    public static void setLowPriority(boolean lowPriority) {
+        if (lowPriority) {
+            sLowPriority.set(Boolean.TRUE);
+        } else {
+            sLowPriority.remove();
+        }
+    }
+
+    public static boolean isLowPriority() {
+        return sLowPriority.get() != null;
+    }
+
+    public static String getBucketForUrl(String url) {
+        return url != null && url.contains("/search/") ? BUCKET_SEARCH : BUCKET_CORE;
+    }
+
+    /**
+     * Called before sending a request. Blocks for a short while if needed,
+     * or throws if the request can't be made within a reasonable time.
+     */
+    public void beforeRequest(String bucketName) throws RateLimitExceededException {
+        final long delay;
+        synchronized (this) {
+            Bucket bucket = mBuckets.get(bucketName);
+            if (bucket == null || bucket.remaining < 0) {
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            long timeToReset = bucket.resetTime - now;
+            if (timeToReset <= 0) {
+                // budget was reset in the meantime, we'll learn the new one from the response
+                bucket.remaining = -1;
+                return;
+            }
+
+            if (bucket.remaining == 0) {
+                if (timeToReset > MAX_WAIT_MS || isLowPriority()) {
+                    throw new RateLimitExceededException(bucketName, bucket.resetTime);
+                }
+                delay = timeToReset;
+            } else if (isLowPriority()
+                    && bucket.remaining * 100 < bucket.limit * LOW_PRIORITY_RESERVE_PERCENT) {
+                // spread the remaining budget evenly over the rest of the window
+                long spacing = timeToReset / bucket.remaining;
+                if (spacing > MAX_LOW_PRIORITY_DELAY_MS) {
+                    throw new RateLimitExceededException(bucketName, bucket.resetTime);
+                }
+                delay = spacing;
+            } else {
+                delay = 0;
+            }
+
+            // account for the request up front, so concurrent requests see the reduced budget
+            if (bucket.remaining > 0) {
+                bucket.remaining--;
+            }
+        }
+
+        if (delay > 0) {
+            Log.d(TAG, "Delaying " + bucketName + " request by " + delay + "ms");
+            SystemClock.sleep(delay);
+        }
+    }
+
+    /**
+     * Updates the budget from the response headers.
+     *
+     * @return true if the response indicates the budget is exhausted
+     */
+    public boolean onResponse(String bucketName, HttpURLConnection connection) {
+        String resource = connection.getHeaderField(HEADER_RESOURCE);
+        if (resource != null) {
+            bucketName = resource;
+        }
+
+        int limit = parseInt(connection.getHeaderField(HEADER_LIMIT));
+        int remaining = parseInt(connection.getHeaderField(HEADER_REMAINING));
+        long resetSeconds = parseInt(connection.getHeaderField(HEADER_RESET));
+        if (limit < 0 || remaining < 0 || resetSeconds < 0) {
+            return false;
+        }
+
+        // The reset header is in wall clock time, but we don't want to be
+        // affected by clock changes afterwards
+        long timeToReset = Math.max(0, resetSeconds * 1000 - System.currentTimeMillis());
+
+        synchronized (this) {
+            Bucket bucket = mBuckets.get(bucketName);
+            if (bucket == null) {
+                bucket = new Bucket();
+                mBuckets.put(bucketName, bucket);
+            }
+            bucket.limit = limit;
+            bucket.remaining = remaining;
+            bucket.resetTime = SystemClock.elapsedRealtime() + timeToReset;
+        }
+
+        return remaining == 0;
+    }
+
+    /**
+     * @return the time to wait until the given bucket is reset, or -1 if unknown
+     */
+    public synchronized long getTimeToReset(String bucketName) {
+        Bucket bucket = mBuckets.get(bucketName);
+        if (bucket == null || bucket.remaining < 0) {
+            return -1;
+        }
+        return Math.max(0, bucket.resetTime - SystemClock.elapsedRealtime());
+    }
+
+    private static int parseInt(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import com.gh4a.DefaultClient;
 import com.gh4a.Gh4Application;
 import com.gh4a.R;
 import com.gh4a.utils.CustomTabsHelper;
+import com.gh4a.utils.HttpUtils;
 import com.gh4a.utils.IntentUtils;
 import com.gh4a.utils.UiUtils;
 
@@ -219,7 +220,7 @@ public class Github4AndroidActivity extends BaseActivity implements View.OnClick
 
             try {
                 URL url = new URL(mUri.toString());
-                connection = (HttpURLConnection) url.openConnection();
+                connection = HttpUtils.openConnection(url);
                 connection.setRequestMethod("POST");
                 connection.addRequestProperty("Accept", "application/json");
 
@@ -36,6 +36,7 @@ import com.gh4a.loader.IsStarringLoader;
 import com.gh4a.loader.IsWatchingLoader;
 import com.gh4a.loader.LoaderCallbacks;
 import com.gh4a.loader.LoaderResult;
+import com.gh4a.loader.ParallelCalls;
 import com.gh4a.loader.ProgressDialogLoaderCallbacks;
 import com.gh4a.loader.RepositoryLoader;
 import com.gh4a.loader.TagListLoader;
@@ -51,6 +52,7 @@ import org.eclipse.egit.github.core.service.WatcherService;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class RepositoryActivity extends BasePagerActivity {
     public static Intent makeIntent(Context context, Repository repo) {
@@ -120,8 +122,23 @@ public class RepositoryActivity extends BasePagerActivity {
             return new BaseLoader<Pair<List<RepositoryBranch>, List<RepositoryTag>>>(RepositoryActivity.this) {
                 @Override
                 protected Pair<List<RepositoryBranch>, List<RepositoryTag>> doLoadInBackground() throws Exception {
-                    return Pair.create(new BranchListLoader(getContext(), mRepoOwner, mRepoName).doLoadInBackground(),
-                            new TagListLoader(getContext(), mRepoOwner, mRepoName).doLoadInBackground());
+                    ParallelCalls calls = createParallelCalls();
+                    ParallelCalls.Result<List<RepositoryBranch>> branches =
+                            calls.add(new Callable<List<RepositoryBranch>>() {
+                        @Override
+                        public List<RepositoryBranch> call() throws Exception {
+                            return new BranchListLoader(getContext(), mRepoOwner, mRepoName).doLoadInBackground();
+                        }
+                    });
+                    ParallelCalls.Result<List<RepositoryTag>> tags =
+                            calls.add(new Callable<List<RepositoryTag>>() {
+                        @Override
+                        public List<RepositoryTag> call() throws Exception {
+                            return new TagListLoader(getContext(), mRepoOwner, mRepoName).doLoadInBackground();
+                        }
+                    });
+                    calls.await();
+                    return Pair.create(branches.get(), tags.get());
                 }
             };
         }
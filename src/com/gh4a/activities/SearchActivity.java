@@ -46,6 +46,7 @@ import android.widget.TextView;
 import com.gh4a.BackgroundTask;
 import com.gh4a.BaseActivity;
 import com.gh4a.R;
+import com.gh4a.RateLimitExceededException;
 import com.gh4a.adapter.CodeSearchAdapter;
 import com.gh4a.adapter.RepositoryAdapter;
 import com.gh4a.adapter.RootAdapter;
@@ -120,6 +121,11 @@ public class SearchActivity extends BaseActivity implements
         protected void onResultReady(List<Repository> result) {
             fillRepositoriesData(result);
         }
+
+        @Override
+        protected boolean onError(Exception e) {
+            return handleRateLimitError(e) || super.onError(e);
+        }
     };
 
     private final LoaderCallbacks<List<SearchUser>> mUserCallback = new LoaderCallbacks<List<SearchUser>>(this) {
@@ -132,6 +138,11 @@ public class SearchActivity extends BaseActivity implements
         protected void onResultReady(List<SearchUser> result) {
             fillUsersData(result);
         }
+
+        @Override
+        protected boolean onError(Exception e) {
+            return handleRateLimitError(e) || super.onError(e);
+        }
     };
 
     private final LoaderCallbacks<List<CodeSearchResult>> mCodeCallback = new LoaderCallbacks<List<CodeSearchResult>>(this) {
@@ -147,6 +158,9 @@ public class SearchActivity extends BaseActivity implements
 
         @Override
         protected boolean onError(Exception e) {
+             if (handleRateLimitError(e)) {
+                 return true;
+             }
              if (e instanceof RequestException) {
                 RequestError error = ((RequestException) e).getError();
                 if (error != null && error.getErrors() != null && !error.getErrors().isEmpty()) {
@@ -351,6 +365,18 @@ public class SearchActivity extends BaseActivity implements
         setAdapter(adapter);
     }
 
+    private boolean handleRateLimitError(Exception e) {
+        if (!(e instanceof RateLimitExceededException)) {
+            return false;
+        }
+        long timeToReset = ((RateLimitExceededException) e).getTimeToReset();
+        setEmptyText(getString(R.string.search_rate_limit_exceeded,
+                Math.max(1, (timeToReset + 999) / 1000)));
+        setContentEmpty(true);
+        setContentShown(true);
+        return true;
+    }
+
     private void setAdapter(RootAdapter<?, ?> adapter) {
         adapter.setOnItemClickListener(this);
         mResultsView.setAdapter(adapter);
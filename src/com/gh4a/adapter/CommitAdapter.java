@@ -36,6 +36,13 @@ import org.eclipse.egit.github.core.RepositoryCommit;
 public class CommitAdapter extends RootAdapter<RepositoryCommit, CommitAdapter.ViewHolder> {
     public CommitAdapter(Context context) {
         super(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    protected long getItemId(RepositoryCommit commit) {
+        // the SHA prefix is more than unique enough within a list
+        return Long.parseLong(commit.getSha().substring(0, 15), 16);
     }
 
     @Override
@@ -15,6 +15,7 @@
  */
 package com.gh4a.adapter;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.egit.github.core.Commit;
@@ -73,6 +74,20 @@ import com.gh4a.widget.StyleableTextView;
 public class EventAdapter extends RootAdapter<Event, EventAdapter.EventViewHolder> {
     public EventAdapter(Context context) {
         super(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    protected long getItemId(Event event) {
+        // event ids are numeric; hashing them instead could yield duplicate ids
+        return Long.parseLong(event.getId());
+    }
+
+    @Override
+    public void prefetchResources(Collection<Event> events) {
+        for (Event event : events) {
+            AvatarHandler.prefetchAvatar(mContext, event.getActor());
+        }
     }
 
     @Override
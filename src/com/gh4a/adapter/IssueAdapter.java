@@ -33,9 +33,24 @@ import com.gh4a.widget.LabelBadgeView;
 
 import org.eclipse.egit.github.core.Issue;
 
+import java.util.Collection;
+
 public class IssueAdapter extends RootAdapter<Issue, IssueAdapter.ViewHolder> {
     public IssueAdapter(Context context) {
         super(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    protected long getItemId(Issue issue) {
+        return issue.getId();
+    }
+
+    @Override
+    public void prefetchResources(Collection<Issue> issues) {
+        for (Issue issue : issues) {
+            AvatarHandler.prefetchAvatar(mContext, issue.getUser());
+        }
     }
 
     @Override
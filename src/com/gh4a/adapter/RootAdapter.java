@@ -28,6 +28,7 @@ import android.widget.Filterable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 
 /**
@@ -52,7 +53,7 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
      * The objects.
      */
     private List<T> mObjects;
-    private final List<T> mUnfilteredObjects;
+    private List<T> mUnfilteredObjects;
 
     /**
      * The context.
@@ -72,6 +73,9 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
     private static final int VIEW_TYPE_FOOTER = 1;
     private static final int VIEW_TYPE_ITEM = 2;
 
+    private static final long ITEM_ID_HEADER = Long.MIN_VALUE;
+    private static final long ITEM_ID_FOOTER = Long.MIN_VALUE + 1;
+
     public static final int CUSTOM_VIEW_TYPE_START = VIEW_TYPE_ITEM;
 
     private final Filter mFilter = new Filter() {
@@ -154,12 +158,29 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
         } else if (mFooterView != null && position == itemStart + mObjects.size()) {
             return VIEW_TYPE_FOOTER;
         } else {
-            int viewType = getItemViewType(getItem(position - itemStart));
+            T item = getItem(position - itemStart);
+            if (item == null) {
+                return VIEW_TYPE_ITEM;
+            }
+            int viewType = getItemViewType(item);
             assert viewType >= CUSTOM_VIEW_TYPE_START;
             return viewType;
         }
     }
 
+    @Override
+    public long getItemId(int position) {
+        int itemStart = mHeaderView != null ? 1 : 0;
+        if (mHeaderView != null && position == 0) {
+            return ITEM_ID_HEADER;
+        } else if (mFooterView != null && position == itemStart + mObjects.size()) {
+            return ITEM_ID_FOOTER;
+        } else {
+            T item = getItem(position - itemStart);
+            return item != null ? getItemId(item) : RecyclerView.NO_ID;
+        }
+    }
+
     public int getCount() {
         return mObjects.size();
     }
@@ -179,26 +200,87 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
      */
     public void add(T object) {
         mUnfilteredObjects.add(object);
-        mObjects.add(object);
+        if (mObjects != mUnfilteredObjects) {
+            mObjects.add(object);
+        }
     }
 
+    /**
+     * Adds the objects. For adapters with stable ids, objects whose id is
+     * present already are skipped, as ids must be unique. Those occur when
+     * items move between the pages of an offset based listing while it's
+     * being fetched.
+     */
     public void addAll(Collection<T> objects) {
-        if (objects != null) {
+        if (objects != null && hasStableIds()) {
+            objects = removeDuplicates(objects);
+        }
+        if (objects != null && !objects.isEmpty()) {
+            int start = (mHeaderView != null ? 1 : 0) + mObjects.size();
             mUnfilteredObjects.addAll(objects);
-            mObjects.addAll(objects);
-            notifyDataSetChanged();
+            if (mObjects != mUnfilteredObjects) {
+                mObjects.addAll(objects);
+            }
+            notifyItemRangeInserted(start, objects.size());
+        }
+    }
+
+    /**
+     * Uses the given list as backing storage for the items, without copying
+     * it. Intended for lists maintained elsewhere which only ever grow at the
+     * end; call {@link #notifyItemsAppended(int)} after items were appended.
+     * As filtering accesses the items on a background thread, it must not be
+     * used with lists restricted to the main thread. Duplicates can't be
+     * removed from such lists, so stable ids must be disabled for them.
+     */
+    public void setItems(List<T> items) {
+        mUnfilteredObjects = items;
+        mObjects = items;
+        notifyDataSetChanged();
+    }
+
+    public void notifyItemsAppended(int count) {
+        if (count > 0) {
+            int start = (mHeaderView != null ? 1 : 0) + mObjects.size() - count;
+            notifyItemRangeInserted(start, count);
         }
     }
 
+    /**
+     * Tells the adapter that items of a list passed to {@link #setItems(List)}
+     * which were unavailable before (see {@link #onBindViewHolder}) can be bound now.
+     */
+    public void notifyItemsLoaded(int start, int count) {
+        notifyItemRangeChanged((mHeaderView != null ? 1 : 0) + start, count);
+    }
+
+    private Collection<T> removeDuplicates(Collection<T> objects) {
+        HashSet<Long> ids = new HashSet<>();
+        for (T object : mUnfilteredObjects) {
+            ids.add(getItemId(object));
+        }
+        ArrayList<T> result = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            if (ids.add(getItemId(object))) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
     public void remove(T object) {
         mUnfilteredObjects.remove(object);
-        mObjects.remove(object);
+        if (mObjects != mUnfilteredObjects) {
+            mObjects.remove(object);
+        }
         notifyDataSetChanged();
     }
 
     public void clear() {
         mUnfilteredObjects.clear();
-        mObjects.clear();
+        if (mObjects != mUnfilteredObjects) {
+            mObjects.clear();
+        }
         notifyDataSetChanged();
     }
 
@@ -235,7 +317,15 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
                 mFooterListener.onScrolledToFooter();
             }
         } else if (!(holder instanceof HeaderViewHolder)) {
-            onBindViewHolder((VH) holder, getItemFromAdapterPosition(position));
+            T item = getItemFromAdapterPosition(position);
+            if (item == null) {
+                // Lists passed to setItems() may not have all items at hand, show
+                // an empty row until notifyItemsLoaded() is called for it
+                holder.itemView.setVisibility(View.INVISIBLE);
+                return;
+            }
+            holder.itemView.setVisibility(View.VISIBLE);
+            onBindViewHolder((VH) holder, item);
             if (position == mHighlightPosition) {
                 final View v = holder.itemView;
                 v.post(new Runnable() {
@@ -259,8 +349,10 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
     public void onClick(View view) {
         VH holder = (VH) view.getTag();
         int position = holder.getAdapterPosition();
-        if (position != RecyclerView.NO_POSITION) {
-            mItemClickListener.onItemClick(getItemFromAdapterPosition(position));
+        T item = position != RecyclerView.NO_POSITION
+                ? getItemFromAdapterPosition(position) : null;
+        if (item != null) {
+            mItemClickListener.onItemClick(item);
         }
     }
 
@@ -273,6 +365,19 @@ public abstract class RootAdapter<T, VH extends RecyclerView.ViewHolder>
     protected int getItemViewType(T item) {
         return VIEW_TYPE_ITEM;
     }
+    /**
+     * Subclasses enabling stable ids via setHasStableIds() need to
+     * override this to return an id unique to the item.
+     */
+    protected long getItemId(T item) {
+        return RecyclerView.NO_ID;
+    }
+    /**
+     * Called with newly loaded items about to be added, so subclasses can start
+     * loading what the items will need for display (e.g. avatars) before they're bound.
+     */
+    public void prefetchResources(Collection<T> items) {
+    }
 
     @Override
     public Filter getFilter() {
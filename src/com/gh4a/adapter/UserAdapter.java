@@ -30,9 +30,22 @@ import com.gh4a.activities.UserActivity;
 import com.gh4a.utils.AvatarHandler;
 import com.gh4a.utils.StringUtils;
 
+import java.util.Collection;
+
 public class UserAdapter extends RootAdapter<User, UserAdapter.ViewHolder> {
     public UserAdapter(Context context) {
         super(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    protected long getItemId(User user) {
+        return user.getId();
+    }
+
+    @Override
+    public void prefetchResources(Collection<User> users) {
+        AvatarHandler.prefetchAvatars(mContext, users);
     }
 
     @Override
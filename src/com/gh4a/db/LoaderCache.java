@@ -0,0 +1,131 @@
+package com.gh4a.db;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * Persistent store for the last result of loaders that opted into
+ * offline-first loading. Kept in a database separate from the user data
+ * in DbHelper, so it can be dropped at will.
+ */
+public class LoaderCache {
+    private static final String TAG = "LoaderCache";
+
+    private static final String DATABASE_NAME = "loadercache.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "results";
+
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_DATA = "data";
+    private static final String COLUMN_TIMESTAMP = "timestamp";
+
+    // Entries not touched for that long are removed regardless of the loader's TTL
+    private static final long MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+    // Blobs larger than that would risk exceeding the cursor window size
+    public static final int MAX_ENTRY_SIZE = 512 * 1024;
+
+    private static LoaderCache sInstance;
+
+    private final Helper mHelper;
+    private boolean mPruned;
+
+    private static class Helper extends SQLiteOpenHelper {
+        public Helper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("create table " + TABLE + " ("
+                    + COLUMN_KEY + " text primary key, "
+                    + COLUMN_DATA + " blob not null, "
+                    + COLUMN_TIMESTAMP + " long not null);");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            db.execSQL("drop table if exists " + TABLE);
+            onCreate(db);
+        }
+    }
+
+    public static synchronized LoaderCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new LoaderCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private LoaderCache(Context context) {
+        mHelper = new Helper(context);
+    }
+
+    /**
+     * @return the stored data for the given key if it's younger than maxAge, null otherwise
+     */
+    public byte[] load(String key, long maxAge) {
+        long minTimestamp = System.currentTimeMillis() - maxAge;
+        Cursor c = null;
+        try {
+            c = mHelper.getReadableDatabase().query(TABLE, new String[] { COLUMN_DATA },
+                    COLUMN_KEY + " = ? AND " + COLUMN_TIMESTAMP + " >= ?",
+                    new String[] { key, String.valueOf(minTimestamp) }, null, null, null);
+            return c.moveToFirst() ? c.getBlob(0) : null;
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not load cached result for " + key, e);
+            return null;
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+    }
+
+    public void store(String key, byte[] data) {
+        if (data.length > MAX_ENTRY_SIZE) {
+            remove(key);
+            return;
+        }
+        ContentValues cv = new ContentValues();
+        cv.put(COLUMN_KEY, key);
+        cv.put(COLUMN_DATA, data);
+        cv.put(COLUMN_TIMESTAMP, System.currentTimeMillis());
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.insertWithOnConflict(TABLE, null, cv, SQLiteDatabase.CONFLICT_REPLACE);
+            pruneIfNeeded(db);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not store result for " + key, e);
+        }
+    }
+
+    public void remove(String key) {
+        try {
+            mHelper.getWritableDatabase().delete(TABLE, COLUMN_KEY + " = ?", new String[] { key });
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not remove result for " + key, e);
+        }
+    }
+
+    public void clear() {
+        try {
+            mHelper.getWritableDatabase().delete(TABLE, null, null);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not clear cache", e);
+        }
+    }
+
+    private synchronized void pruneIfNeeded(SQLiteDatabase db) {
+        if (mPruned) {
+            return;
+        }
+        long minTimestamp = System.currentTimeMillis() - MAX_AGE;
+        db.delete(TABLE, COLUMN_TIMESTAMP + " < ?", new String[] { String.valueOf(minTimestamp) });
+        mPruned = true;
+    }
+}
@@ -56,6 +56,11 @@ public class FollowersFollowingListFragment extends PagedDataBaseFragment<User>
         return new UserAdapter(getActivity());
     }
 
+    @Override
+    protected boolean useWindowedStorage() {
+        return true;
+    }
+
     @Override
     protected int getEmptyTextResId() {
         return mShowFollowers ? R.string.no_followers_found : R.string.no_following_found;
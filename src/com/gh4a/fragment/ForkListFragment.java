@@ -56,6 +56,11 @@ public class ForkListFragment extends PagedDataBaseFragment<Repository> {
         return new RepositoryAdapter(getActivity());
     }
 
+    @Override
+    protected boolean useWindowedStorage() {
+        return true;
+    }
+
     @Override
     protected int getEmptyTextResId() {
         return R.string.no_forks_found;
@@ -17,6 +17,7 @@ package com.gh4a.fragment;
 
 import android.os.Bundle;
 import android.support.v4.content.Loader;
+import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,11 +28,14 @@ import com.gh4a.adapter.RootAdapter;
 import com.gh4a.loader.LoaderCallbacks;
 import com.gh4a.loader.LoaderResult;
 import com.gh4a.loader.PageIteratorLoader;
+import com.gh4a.loader.PagedListSnapshot;
+import com.gh4a.utils.WindowedList;
 
 import org.eclipse.egit.github.core.client.PageIterator;
 
-import java.util.ArrayList;
+import java.io.File;
 import java.util.Collection;
+import java.util.UUID;
 
 public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase implements
         RootAdapter.OnItemClickListener<T>, RootAdapter.OnScrolledToFooterListener {
@@ -39,22 +43,32 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
     private PageIteratorWithSaveableState<T> mIterator;
     private boolean mIsLoadCompleted;
     private View mLoadingView;
+    private PageIteratorLoader<T>.LoadedPage mLastPage;
+    private String mSnapshotId;
+    private PageIteratorLoader<T>.LoadedPage mSnapshotPage;
+    private File mRestoredSnapshot;
+    private int mRestoredSnapshotItemCount;
 
     private static final String STATE_KEY_ITERATOR_STATE = "iterator_state";
+    private static final String STATE_KEY_SNAPSHOT_ID = "snapshot_id";
+    private static final String STATE_KEY_SNAPSHOT_ITEM_COUNT = "snapshot_item_count";
+    private static final int DEFAULT_PREFETCH_DISTANCE = 10;
 
     private final LoaderCallbacks<PageIteratorLoader<T>.LoadedPage> mLoaderCallback =
             new LoaderCallbacks<PageIteratorLoader<T>.LoadedPage>(this) {
         @Override
         protected Loader<LoaderResult<PageIteratorLoader<T>.LoadedPage>> onCreateLoader() {
-            return new PageIteratorLoader<>(getActivity(), mIterator);
+            File snapshot = mRestoredSnapshot;
+            mRestoredSnapshot = null;
+            return new PageIteratorLoader<>(getActivity(), mIterator,
+                    useWindowedStorage(), snapshot, mRestoredSnapshotItemCount);
         }
 
         @Override
         protected void onResultReady(PageIteratorLoader<T>.LoadedPage result) {
-            fillData(result.results, result.hasMoreData);
+            fillData(result);
             mIsLoadCompleted = true;
             setContentShown(true);
-            mAdapter.notifyDataSetChanged();
             updateEmptyState();
         }
     };
@@ -67,7 +81,15 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
 
         mIterator = (PageIteratorWithSaveableState<T>) onCreateIterator();
         if (savedInstanceState != null) {
-            mIterator.restoreState(savedInstanceState.getBundle(STATE_KEY_ITERATOR_STATE));
+            mSnapshotId = savedInstanceState.getString(STATE_KEY_SNAPSHOT_ID);
+            boolean restored =
+                    mIterator.restoreState(savedInstanceState.getBundle(STATE_KEY_ITERATOR_STATE));
+            // only used if the loader is gone, i.e. if our process was killed
+            if (restored && mSnapshotId != null) {
+                mRestoredSnapshot = PagedListSnapshot.getFile(getActivity(), mSnapshotId);
+                mRestoredSnapshotItemCount =
+                        savedInstanceState.getInt(STATE_KEY_SNAPSHOT_ITEM_COUNT, -1);
+            }
         }
 
         getLoaderManager().initLoader(0, null, mLoaderCallback);
@@ -76,7 +98,23 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        if (mIterator != null) {
+        if (mLastPage != null && mLastPage.iteratorState != null && !useWindowedStorage()) {
+            // Save the items along with the matching iterator state, so the
+            // list can be restored without refetching if our process is killed
+            if (mSnapshotId == null) {
+                mSnapshotId = UUID.randomUUID().toString();
+            }
+            if (mSnapshotPage != mLastPage) {
+                PagedListSnapshot.writeAsync(PagedListSnapshot.getFile(getActivity(), mSnapshotId),
+                        mLastPage.getAllResults());
+                mSnapshotPage = mLastPage;
+            }
+            outState.putString(STATE_KEY_SNAPSHOT_ID, mSnapshotId);
+            // lets the loader tell whether the snapshot matches the iterator state
+            outState.putInt(STATE_KEY_SNAPSHOT_ITEM_COUNT,
+                    mLastPage.offset + mLastPage.results.size());
+            outState.putBundle(STATE_KEY_ITERATOR_STATE, mLastPage.iteratorState);
+        } else if (mIterator != null) {
             outState.putBundle(STATE_KEY_ITERATOR_STATE, mIterator.saveState());
         }
     }
@@ -86,6 +124,8 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
         if (mAdapter != null) {
             mAdapter.clear();
         }
+        mLastPage = null;
+        mRestoredSnapshot = null;
         mIsLoadCompleted = false;
         hideContentAndRestartLoaders(0);
     }
@@ -94,11 +134,23 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
     protected void onRecyclerViewInflated(RecyclerView view, LayoutInflater inflater) {
         super.onRecyclerViewInflated(view, inflater);
         mAdapter = onCreateAdapter();
+        if (useWindowedStorage()) {
+            // the loader keeps the items, so the adapter can't drop duplicates
+            // to keep stable ids unique
+            mAdapter.setHasStableIds(false);
+        }
 
         mLoadingView = inflater.inflate(R.layout.list_loading_view, view, false);
         mAdapter.setFooterView(mLoadingView, this);
         mAdapter.setOnItemClickListener(this);
         view.setAdapter(mAdapter);
+        view.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager lm = (LinearLayoutManager) recyclerView.getLayoutManager();
+                prefetchIfNeeded(lm.findLastVisibleItemPosition());
+            }
+        });
         updateEmptyState();
     }
 
@@ -112,27 +164,76 @@ public abstract class PagedDataBaseFragment<T> extends LoadingListFragmentBase i
         return mAdapter.isCardStyle();
     }
 
-    private void fillData(Collection<T> data, boolean hasMoreData) {
-        mLoadingView.setVisibility(hasMoreData ? View.VISIBLE : View.GONE);
-
-        if (mAdapter.getCount() > 0 && !data.isEmpty() && data.iterator().next() == mAdapter.getItem(0)) {
-            // there are common items, preserve them in order to keep the scroll position
-            ArrayList<T> newData = new ArrayList<>();
-            int index = 0, count = mAdapter.getCount();
-            for (T item : data) {
-                if (index < count && item == mAdapter.getItem(index++)) {
-                    // we already know about the item
-                    continue;
-                }
-                newData.add(item);
+    private void fillData(PageIteratorLoader<T>.LoadedPage page) {
+        mLoadingView.setVisibility(page.hasMoreData ? View.VISIBLE : View.GONE);
+
+        if (page == mLastPage) {
+            // redelivery of the page we already have
+            return;
+        }
+        // only for the new items, the others were prefetched when they were loaded
+        mAdapter.prefetchResources(page.results);
+        if (useWindowedStorage()) {
+            // the adapter shares the loader's list, so it only needs to be told about changes
+            if (mLastPage == null || page.offset == 0) {
+                // first page, possibly after the loader was reset
+                WindowedList<T> items = (WindowedList<T>) page.getAllResults();
+                items.setOnItemsLoadedListener(new WindowedList.OnItemsLoadedListener() {
+                    @Override
+                    public void onItemsLoaded(int start, int count) {
+                        mAdapter.notifyItemsLoaded(start, count);
+                    }
+                });
+                mAdapter.setItems(items);
+            } else {
+                mAdapter.notifyItemsAppended(page.offset + page.results.size()
+                        - mLastPage.offset - mLastPage.results.size());
             }
-            onAddData(mAdapter, newData);
+        } else if (mLastPage != null && page.offset > 0
+                && page.offset == mLastPage.offset + mLastPage.results.size()) {
+            // we have everything up to this page, so just append it
+            onAddData(mAdapter, page.results);
         } else {
+            // first page, or we missed the previous pages (e.g. after the view was recreated)
             mAdapter.clear();
-            onAddData(mAdapter, data);
+            onAddData(mAdapter, page.getAllResults());
+        }
+        mLastPage = page;
+    }
+
+    private void prefetchIfNeeded(int lastVisiblePosition) {
+        int distance = getPrefetchDistance();
+        if (distance <= 0 || !mIsLoadCompleted || mLoadingView.getVisibility() != View.VISIBLE) {
+            return;
+        }
+        // the footer is the last item, so don't count it
+        if (lastVisiblePosition >= mAdapter.getItemCount() - 1 - distance) {
+            Loader<?> loader = getLoaderManager().getLoader(0);
+            if (loader instanceof PageIteratorLoader) {
+                ((PageIteratorLoader<?>) loader).prefetchNextPage();
+            }
         }
     }
 
+    /**
+     * @return how many items before the end of the list the next page
+     *         should start loading in the background, or 0 to disable that
+     */
+    protected int getPrefetchDistance() {
+        return DEFAULT_PREFETCH_DISTANCE;
+    }
+
+    /**
+     * Fragments for lists which can grow very large can return true here to
+     * keep only the items around the visible ones in memory, with the others
+     * being swapped out to disk. The loaded items are handed to the adapter
+     * directly in that case, so {@link #onAddData} isn't called, and the
+     * adapter must not be filtered.
+     */
+    protected boolean useWindowedStorage() {
+        return false;
+    }
+
     protected void onAddData(RootAdapter<T, ? extends RecyclerView.ViewHolder> adapter, Collection<T> data) {
         adapter.addAll(data);
     }
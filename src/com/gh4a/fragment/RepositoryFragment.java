@@ -31,6 +31,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.gh4a.R;
+import com.gh4a.RateLimitExceededException;
 import com.gh4a.activities.CollaboratorListActivity;
 import com.gh4a.activities.ContributorListActivity;
 import com.gh4a.activities.DownloadsActivity;
@@ -46,6 +47,7 @@ import com.gh4a.loader.LoaderResult;
 import com.gh4a.loader.PullRequestCountLoader;
 import com.gh4a.loader.ReadmeLoader;
 import com.gh4a.utils.ApiHelpers;
+import com.gh4a.utils.HtmlUtils;
 import com.gh4a.utils.HttpImageGetter;
 import com.gh4a.utils.StringUtils;
 import com.gh4a.utils.UiUtils;
@@ -75,14 +77,16 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
         @Override
         protected Loader<LoaderResult<String>> onCreateLoader() {
             return new ReadmeLoader(getActivity(), mRepository.getOwner().getLogin(),
-                    mRepository.getName(), StringUtils.isBlank(mRef) ? mRepository.getDefaultBranch() : mRef);
+                    mRepository.getName(), getReadmeRef());
         }
         @Override
         protected void onResultReady(String result) {
             TextView readmeView = (TextView) mContentView.findViewById(R.id.readme);
             View progress = mContentView.findViewById(R.id.pb_readme);
+            String baseUrl = HtmlUtils.getRawBaseUrl(mRepository.getOwner().getLogin(),
+                    mRepository.getName(), getReadmeRef());
             AsyncTaskCompat.executeParallel(new FillReadmeTask(
-                    mRepository.getId(), readmeView, progress, mImageGetter), result);
+                    mRepository.getId(), readmeView, progress, mImageGetter, baseUrl), result);
         }
     };
 
@@ -104,6 +108,18 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
             TextView tvPullRequestsCountView = (TextView) v.findViewById(R.id.tv_pull_requests_count);
             tvPullRequestsCountView.setText(String.valueOf(result));
         }
+
+        @Override
+        protected boolean onError(Exception e) {
+            if (e instanceof RateLimitExceededException) {
+                // The counts are a nice-to-have, so don't fail the whole screen for them
+                View v = getView();
+                v.findViewById(R.id.issues_progress).setVisibility(View.GONE);
+                v.findViewById(R.id.pull_requests_progress).setVisibility(View.GONE);
+                return true;
+            }
+            return false;
+        }
     };
 
     @Override
@@ -174,6 +190,10 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
         }
     }
 
+    private String getReadmeRef() {
+        return StringUtils.isBlank(mRef) ? mRepository.getDefaultBranch() : mRef;
+    }
+
     private void fillData() {
         TextView tvRepoName = (TextView) mContentView.findViewById(R.id.tv_repo_name);
         SpannableStringBuilder repoName = new SpannableStringBuilder();
@@ -312,10 +332,12 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
         private final TextView mReadmeView;
         private final View mProgressView;
         private final HttpImageGetter mImageGetter;
+        private final String mBaseUrl;
 
         public FillReadmeTask(long id, TextView readmeView, View progressView,
-                HttpImageGetter imageGetter) {
+                HttpImageGetter imageGetter, String baseUrl) {
             mId = id;
+            mBaseUrl = baseUrl;
             mContext = readmeView.getContext();
             mReadmeView = readmeView;
             mProgressView = progressView;
@@ -326,7 +348,7 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
         protected String doInBackground(String... params) {
             String readme = params[0];
             if (readme != null) {
-                mImageGetter.encode(mContext, mId, readme);
+                mImageGetter.encode(mContext, mId, readme, mBaseUrl);
             }
             return readme;
         }
@@ -335,7 +357,7 @@ public class RepositoryFragment extends LoadingFragmentBase implements OnClickLi
         protected void onPostExecute(String result) {
             if (result != null) {
                 mReadmeView.setMovementMethod(UiUtils.CHECKING_LINK_METHOD);
-                mImageGetter.bind(mReadmeView, result, mId);
+                mImageGetter.bind(mReadmeView, result, mBaseUrl, mId);
             } else {
                 mReadmeView.setText(R.string.repo_no_readme);
                 mReadmeView.setTypeface(Typeface.DEFAULT, Typeface.ITALIC);
@@ -57,6 +57,11 @@ public class StargazerListFragment extends PagedDataBaseFragment<User> {
         return new UserAdapter(getActivity());
     }
 
+    @Override
+    protected boolean useWindowedStorage() {
+        return true;
+    }
+
     @Override
     protected int getEmptyTextResId() {
         return R.string.no_stargazers_found;
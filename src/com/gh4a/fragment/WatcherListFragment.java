@@ -57,6 +57,11 @@ public class WatcherListFragment extends PagedDataBaseFragment<User> {
         return new UserAdapter(getActivity());
     }
 
+    @Override
+    protected boolean useWindowedStorage() {
+        return true;
+    }
+
     @Override
     protected int getEmptyTextResId() {
         return R.string.no_watchers_found;
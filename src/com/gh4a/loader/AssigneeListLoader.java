@@ -10,6 +10,7 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
 
 public class AssigneeListLoader extends BaseLoader<List<User>> {
     private final String mRepoOwner;
@@ -23,8 +24,14 @@ public class AssigneeListLoader extends BaseLoader<List<User>> {
 
     @Override
     public List<User> doLoadInBackground() throws IOException {
-        RepositoryService repoService = (RepositoryService)
+        final RepositoryService repoService = (RepositoryService)
                 Gh4Application.get().getService(Gh4Application.REPO_SERVICE);
-        return repoService.getAssignees(new RepositoryId(mRepoOwner, mRepoName));
+        return PageIteratorWithSaveableState.loadAllPagesInParallel(
+                new PageIteratorWithSaveableState.PageDrain<List<User>>() {
+            @Override
+            public List<User> load() throws IOException {
+                return repoService.getAssignees(new RepositoryId(mRepoOwner, mRepoName));
+            }
+        });
     }
 }
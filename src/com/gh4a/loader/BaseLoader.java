@@ -1,13 +1,32 @@
 package com.gh4a.loader;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.content.AsyncTaskLoader;
 import android.util.Log;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.RateLimitScheduler;
+import com.gh4a.db.LoaderCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public abstract class BaseLoader<T> extends AsyncTaskLoader<LoaderResult<T>> {
+    protected static final long DEFAULT_CACHE_MAX_AGE = 24 * 60 * 60 * 1000;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
     private T mPrefilledData;
+    private boolean mCacheConsulted;
+    private final List<ParallelCalls> mParallelCalls = new ArrayList<>();
 
     public BaseLoader(Context context) {
         super(context);
@@ -22,12 +41,66 @@ public abstract class BaseLoader<T> extends AsyncTaskLoader<LoaderResult<T>> {
 
     @Override
     public LoaderResult<T> loadInBackground() {
+        RateLimitScheduler.setLowPriority(isLowPriority());
+        String cacheKey = getFullCacheKey();
+        byte[] cachedData = null;
+        LoaderResult<T> cachedResult = null;
+
         try {
+            if (cacheKey != null && !mCacheConsulted) {
+                mCacheConsulted = true;
+                cachedData = LoaderCache.get(getContext()).load(cacheKey, getCacheMaxAge());
+                T cached = deserialize(cachedData);
+                if (cached != null) {
+                    cachedResult = new LoaderResult<>(cached);
+                    deliverCachedResult(cachedResult);
+                }
+            }
+
             T data = doLoadInBackground();
+
+            if (cacheKey != null) {
+                byte[] freshData = serialize(data);
+                if (freshData != null) {
+                    LoaderCache.get(getContext()).store(cacheKey, freshData);
+                }
+                if (cachedResult != null && Arrays.equals(freshData, cachedData)) {
+                    // Nothing changed: hand back the instance that was already
+                    // delivered, which the LoaderManager doesn't deliver again
+                    return cachedResult;
+                }
+            }
             return new LoaderResult<>(data);
         } catch (Exception e) {
             Log.e(Gh4Application.LOG_TAG, e.getMessage(), e);
+            if (cachedResult != null) {
+                // keep showing the cached data instead of an error
+                return cachedResult;
+            }
             return new LoaderResult<>(e);
+        } finally {
+            RateLimitScheduler.setLowPriority(false);
+            synchronized (mParallelCalls) {
+                mParallelCalls.clear();
+            }
+        }
+    }
+
+    /**
+     * Loaders for data which isn't essential for the screen showing it can
+     * override this to have their requests throttled or dropped first when
+     * the API rate limit budget runs low.
+     */
+    protected boolean isLowPriority() {
+        return false;
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        synchronized (mParallelCalls) {
+            for (ParallelCalls calls : mParallelCalls) {
+                calls.cancel();
+            }
         }
     }
 
@@ -49,5 +122,87 @@ public abstract class BaseLoader<T> extends AsyncTaskLoader<LoaderResult<T>> {
         cancelLoad();
     }
 
+    /**
+     * Loaders can opt into offline-first loading by returning a key that
+     * identifies the loaded data. In that case, the last persisted result
+     * is delivered right away and revalidated in the background; a second
+     * result is only delivered if the data changed. The loaded data needs
+     * to be serializable for this to work.
+     *
+     * @return key for the loaded data (unique within the loader class),
+     *         or null to disable caching
+     */
+    protected String getCacheKey() {
+        return null;
+    }
+
+    /**
+     * @return maximum age of a persisted result for it to still be delivered
+     */
+    protected long getCacheMaxAge() {
+        return DEFAULT_CACHE_MAX_AGE;
+    }
+
+    /**
+     * Creates a set of parallel calls that is cancelled together with the
+     * load. Only to be used from within {@link #doLoadInBackground()}.
+     */
+    protected ParallelCalls createParallelCalls() {
+        ParallelCalls calls = new ParallelCalls();
+        synchronized (mParallelCalls) {
+            mParallelCalls.add(calls);
+        }
+        return calls;
+    }
+
+    private String getFullCacheKey() {
+        String key = getCacheKey();
+        if (key == null) {
+            return null;
+        }
+        return getClass().getName() + "|" + Gh4Application.get().getAuthLogin() + "|" + key;
+    }
+
+    private void deliverCachedResult(final LoaderResult<T> result) {
+        sHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isStarted() && !isAbandoned() && !isReset()) {
+                    deliverResult(result);
+                }
+            }
+        });
+    }
+
+    private static byte[] serialize(Object data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(data);
+            oos.close();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            Log.w(Gh4Application.LOG_TAG, "Could not serialize loader result", e);
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T deserialize(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+            return (T) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // most likely the class layout changed with an update, just ignore the entry
+            return null;
+        }
+    }
+
     protected abstract T doLoadInBackground() throws Exception;
 }
@@ -11,6 +11,7 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
 
 public class BranchListLoader extends BaseLoader<List<RepositoryBranch>> {
     private final String mRepoOwner;
@@ -24,9 +25,15 @@ public class BranchListLoader extends BaseLoader<List<RepositoryBranch>> {
 
     @Override
     public List<RepositoryBranch> doLoadInBackground() throws IOException {
-        RepositoryService repoService = (RepositoryService)
+        final RepositoryService repoService = (RepositoryService)
                 Gh4Application.get().getService(Gh4Application.REPO_SERVICE);
-        List<RepositoryBranch> branches = repoService.getBranches(new RepositoryId(mRepoOwner, mRepoName));
+        List<RepositoryBranch> branches = PageIteratorWithSaveableState.loadAllPagesInParallel(
+                new PageIteratorWithSaveableState.PageDrain<List<RepositoryBranch>>() {
+            @Override
+            public List<RepositoryBranch> load() throws IOException {
+                return repoService.getBranches(new RepositoryId(mRepoOwner, mRepoName));
+            }
+        });
         ArrayList<RepositoryBranch> result = new ArrayList<>();
 
         if (branches != null) {
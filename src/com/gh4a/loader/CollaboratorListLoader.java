@@ -27,4 +27,9 @@ public class CollaboratorListLoader extends BaseLoader<List<User>> {
                 Gh4Application.get().getService(Gh4Application.COLLAB_SERVICE);
         return collabService.getCollaborators(new RepositoryId(mRepoOwner, mRepoName));
     }
+
+    @Override
+    protected String getCacheKey() {
+        return mRepoOwner + "/" + mRepoName;
+    }
 }
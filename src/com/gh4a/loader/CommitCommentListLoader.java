@@ -3,6 +3,7 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.utils.RenderedHtmlCache;
 
 import org.eclipse.egit.github.core.CommitComment;
 import org.eclipse.egit.github.core.RepositoryId;
@@ -34,6 +35,7 @@ public class CommitCommentListLoader extends BaseLoader<List<CommitComment>> {
         List<CommitComment> comments = loadComments(mRepoOwner, mRepoName, mSha);
 
         if (comments == null || (mIncludePositional && mIncludeUnpositional)) {
+            prerenderBodies(comments);
             return comments;
         }
         ArrayList<CommitComment> result = new ArrayList<>();
@@ -43,9 +45,23 @@ public class CommitCommentListLoader extends BaseLoader<List<CommitComment>> {
                 result.add(comment);
             }
         }
+        prerenderBodies(result);
         return result;
     }
 
+    private void prerenderBodies(List<CommitComment> comments) {
+        if (comments == null) {
+            return;
+        }
+        for (CommitComment comment : comments) {
+            // positional comments are shown inline in the diff, not in comment lists
+            if (comment.getPosition() < 0) {
+                RenderedHtmlCache.prerender(getContext(), comment.getId(),
+                        comment.getUpdatedAt(), comment.getBodyHtml());
+            }
+        }
+    }
+
     public static List<CommitComment> loadComments(String repoOwner, String repoName, String sha)
             throws IOException {
         CommitService commitService = (CommitService)
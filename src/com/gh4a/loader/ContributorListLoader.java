@@ -27,4 +27,9 @@ public class ContributorListLoader extends BaseLoader<List<Contributor>> {
                 Gh4Application.get().getService(Gh4Application.REPO_SERVICE);
         return repoService.getContributors(new RepositoryId(mRepoOwner, mRepoName), true);
     }
+
+    @Override
+    protected String getCacheKey() {
+        return mRepoOwner + "/" + mRepoName;
+    }
 }
@@ -2,8 +2,7 @@ package com.gh4a.loader;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.HttpURLConnection;
 import java.util.List;
 
 import javax.net.ssl.HostnameVerifier;
@@ -16,6 +15,7 @@ import android.content.Context;
 
 import com.gh4a.feeds.FeedHandler;
 import com.gh4a.holder.Feed;
+import com.gh4a.utils.HttpUtils;
 
 public class FeedLoader extends BaseLoader<List<Feed>> {
     private final String mUrl;
@@ -35,8 +35,7 @@ public class FeedLoader extends BaseLoader<List<Feed>> {
     public List<Feed> doLoadInBackground() throws Exception {
         BufferedInputStream bis = null;
         try {
-            URL url = new URL(mUrl);
-            URLConnection request = url.openConnection();
+            HttpURLConnection request = HttpUtils.openConnection(mUrl);
 
             if (request instanceof HttpsURLConnection) {
                 ((HttpsURLConnection) request).setHostnameVerifier(DO_NOT_VERIFY);
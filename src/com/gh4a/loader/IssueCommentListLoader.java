@@ -3,6 +3,8 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
+import com.gh4a.utils.RenderedHtmlCache;
 
 import org.eclipse.egit.github.core.Comment;
 import org.eclipse.egit.github.core.IssueEvent;
@@ -15,6 +17,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class IssueCommentListLoader extends BaseLoader<List<IssueEventHolder>> {
     private final boolean mIsPullRequest;
@@ -53,18 +56,45 @@ public class IssueCommentListLoader extends BaseLoader<List<IssueEventHolder>> {
     }
 
     @Override
-    protected List<IssueEventHolder> doLoadInBackground() throws IOException {
-        IssueService issueService = (IssueService)
+    protected List<IssueEventHolder> doLoadInBackground() throws Exception {
+        final IssueService issueService = (IssueService)
                 Gh4Application.get().getService(Gh4Application.ISSUE_SERVICE);
-        List<Comment> comments = issueService.getComments(
-                new RepositoryId(mRepoOwner, mRepoName), mIssueNumber);
-        List<IssueEvent> events = issueService.getIssueEvents(mRepoOwner, mRepoName, mIssueNumber);
+        ParallelCalls calls = createParallelCalls();
+        ParallelCalls.Result<List<Comment>> comments = calls.add(new Callable<List<Comment>>() {
+            @Override
+            public List<Comment> call() throws IOException {
+                return PageIteratorWithSaveableState.loadAllPagesInParallel(
+                        new PageIteratorWithSaveableState.PageDrain<List<Comment>>() {
+                    @Override
+                    public List<Comment> load() throws IOException {
+                        return issueService.getComments(
+                                new RepositoryId(mRepoOwner, mRepoName), mIssueNumber);
+                    }
+                });
+            }
+        });
+        ParallelCalls.Result<List<IssueEvent>> events = calls.add(new Callable<List<IssueEvent>>() {
+            @Override
+            public List<IssueEvent> call() throws IOException {
+                return PageIteratorWithSaveableState.loadAllPagesInParallel(
+                        new PageIteratorWithSaveableState.PageDrain<List<IssueEvent>>() {
+                    @Override
+                    public List<IssueEvent> load() throws IOException {
+                        return issueService.getIssueEvents(mRepoOwner, mRepoName, mIssueNumber);
+                    }
+                });
+            }
+        });
+        calls.await();
+
         List<IssueEventHolder> result = new ArrayList<>();
 
-        for (Comment comment : comments) {
+        for (Comment comment : comments.get()) {
+            RenderedHtmlCache.prerender(getContext(), comment.getId(),
+                    comment.getUpdatedAt(), comment.getBodyHtml());
             result.add(new IssueEventHolder(comment, mIsPullRequest));
         }
-        for (IssueEvent event : events) {
+        for (IssueEvent event : events.get()) {
             if (INTERESTING_EVENTS.contains(event.getEvent())) {
                 result.add(new IssueEventHolder(event, mIsPullRequest));
             }
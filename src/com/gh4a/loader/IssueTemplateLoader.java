@@ -2,6 +2,7 @@ package com.gh4a.loader;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.eclipse.egit.github.core.RepositoryContents;
 import org.eclipse.egit.github.core.RepositoryId;
@@ -26,15 +27,33 @@ public class IssueTemplateLoader extends BaseLoader<String> {
     }
 
     @Override
-    public String doLoadInBackground() throws IOException {
+    public String doLoadInBackground() throws Exception {
         Gh4Application app = (Gh4Application) getContext().getApplicationContext();
-        ContentsService contentService =
+        final ContentsService contentService =
                 (ContentsService) app.getService(Gh4Application.CONTENTS_SERVICE);
-        RepositoryId repoId = new RepositoryId(mRepoOwner, mRepoName);
+        final RepositoryId repoId = new RepositoryId(mRepoOwner, mRepoName);
 
-        RepositoryContents template = fetchIssueTemplateContent(contentService, repoId, null);
+        // probe both possible locations at once, the root directory takes precedence
+        ParallelCalls calls = createParallelCalls();
+        ParallelCalls.Result<RepositoryContents> rootTemplate =
+                calls.add(new Callable<RepositoryContents>() {
+            @Override
+            public RepositoryContents call() throws IOException {
+                return fetchIssueTemplateContent(contentService, repoId, null);
+            }
+        });
+        ParallelCalls.Result<RepositoryContents> githubDirTemplate =
+                calls.add(new Callable<RepositoryContents>() {
+            @Override
+            public RepositoryContents call() throws IOException {
+                return fetchIssueTemplateContent(contentService, repoId, "/.github");
+            }
+        });
+        calls.await();
+
+        RepositoryContents template = rootTemplate.get();
         if (template == null) {
-            template = fetchIssueTemplateContent(contentService, repoId, "/.github");
+            template = githubDirTemplate.get();
         }
         if (template != null) {
             // fetch again to get the actual contents; we're at this point sure the file exists
@@ -3,12 +3,14 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
 
 import org.eclipse.egit.github.core.Notification;
 import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.User;
 import org.eclipse.egit.github.core.service.NotificationService;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -43,9 +45,15 @@ public class NotificationListLoader extends BaseLoader<NotificationListLoadResul
 
     @Override
     protected NotificationListLoadResult doLoadInBackground() throws Exception {
-        NotificationService notificationService = (NotificationService)
+        final NotificationService notificationService = (NotificationService)
                 Gh4Application.get().getService(Gh4Application.NOTIFICATION_SERVICE);
-        List<Notification> notifications = notificationService.getNotifications();
+        List<Notification> notifications = PageIteratorWithSaveableState.loadAllPagesInParallel(
+                new PageIteratorWithSaveableState.PageDrain<List<Notification>>() {
+            @Override
+            public List<Notification> load() throws IOException {
+                return notificationService.getNotifications();
+            }
+        });
         Collections.sort(notifications, SORTER);
 
         Repository previousRepository = null;
@@ -25,4 +25,9 @@ public class OrganizationMemberListLoader extends BaseLoader<List<User>> {
                 Gh4Application.get().getService(Gh4Application.ORG_SERVICE);
         return orgService.getMembers(mUserLogin);
     }
+
+    @Override
+    protected String getCacheKey() {
+        return mUserLogin;
+    }
 }
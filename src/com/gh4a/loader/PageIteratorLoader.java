@@ -1,68 +1,248 @@
 package com.gh4a.loader;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.eclipse.egit.github.core.client.NoSuchPageException;
 import org.eclipse.egit.github.core.client.PageIterator;
 
 import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
 import android.support.v4.content.AsyncTaskLoader;
 import android.util.Log;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
+import com.gh4a.RateLimitScheduler;
+import com.gh4a.utils.WindowedList;
 
 public class PageIteratorLoader<T> extends AsyncTaskLoader<LoaderResult<PageIteratorLoader<T>.LoadedPage>> {
+    // Number of pages kept in memory at each side of the visible one in windowed mode
+    private static final int WINDOW_PAGES = 2;
+
     private final PageIterator<T> mPageIterator;
-    private ArrayList<T> mPreviouslyLoadedData;
+    // Snapshot to be delivered by the first load instead of fetching the first page
+    private File mSnapshotFile;
+    private final int mSnapshotItemCount;
+    // Pages loaded so far; only ever appended to, the contained pages are never modified.
+    // Not used in windowed mode, where mWindowedList keeps the items instead.
+    private ArrayList<Collection<T>> mLoadedPages;
+    private int mLoadedItemCount;
+
+    // Only accessed from the main thread
+    private final WindowedList<T> mWindowedList;
+    private final ArrayList<Collection<T>> mUndeliveredPages = new ArrayList<>();
+    // Whether the list still contains the items of before the last reset. It's
+    // shared with the adapter, so it's only cleared once the new items are delivered.
+    private boolean mWindowedListOutdated;
+    // Incremented on every reset, so pages loaded before can be told apart
+    private volatile int mResetCount;
+
+    // Guards all access to the page iterator, which is used by both
+    // the load and the prefetch threads
+    private final Object mIteratorLock = new Object();
+    // Guards mPrefetchTask, must never be held while waiting for mIteratorLock
+    private final Object mPrefetchLock = new Object();
+    private volatile boolean mResetPending;
+    private FutureTask<Collection<T>> mPrefetchTask;
 
     public class LoadedPage {
+        /** Items of the newly loaded page only */
         public final Collection<T> results;
+        /** Number of items on the pages loaded before this one */
+        public final int offset;
         public final boolean hasMoreData;
-        private LoadedPage(Collection<T> r, boolean hmd) {
+        /**
+         * State of the iterator right after loading this page, or null if the
+         * iterator doesn't support saving its state
+         */
+        public final Bundle iteratorState;
+        private final List<Collection<T>> mAllPages;
+        private final int mResetCount;
+
+        private LoadedPage(List<Collection<T>> allPages, Collection<T> r, int o,
+                boolean hmd, Bundle is, int resetCount) {
+            mAllPages = allPages;
             results = r;
+            offset = o;
             hasMoreData = hmd;
+            iteratorState = is;
+            mResetCount = resetCount;
+        }
+
+        /**
+         * @return all items loaded up to and including this page, for
+         *         consumers which didn't see the previous pages. In windowed
+         *         mode, this is the loader's live list of all items, which must
+         *         only be accessed from the main thread.
+         */
+        public List<T> getAllResults() {
+            if (mWindowedList != null) {
+                return mWindowedList;
+            }
+            ArrayList<T> result = new ArrayList<>(offset + results.size());
+            for (Collection<T> page : mAllPages) {
+                result.addAll(page);
+            }
+            return result;
         }
     }
 
     public PageIteratorLoader(Context context, PageIterator<T> pageIterator) {
+        this(context, pageIterator, false, null, 0);
+    }
+
+    /**
+     * @param windowed     whether to keep only the items around the position
+     *                     the list is accessed at in memory
+     * @param snapshotFile snapshot (see {@link PagedListSnapshot}) of the items
+     *                     loaded up to the state the iterator was restored to,
+     *                     or null. If the snapshot can be read, it's delivered
+     *                     as the first page, otherwise the iterator is reset
+     *                     and loading starts over at the first page.
+     * @param snapshotItemCount number of items loaded up to the state the iterator
+     *                     was restored to, see {@link PagedListSnapshot#read}
+     */
+    public PageIteratorLoader(Context context, PageIterator<T> pageIterator,
+            boolean windowed, File snapshotFile, int snapshotItemCount) {
         super(context);
         mPageIterator = pageIterator;
-        mPreviouslyLoadedData = new ArrayList<>();
+        mSnapshotFile = snapshotFile;
+        mSnapshotItemCount = snapshotItemCount;
+        mLoadedPages = new ArrayList<>();
+        mWindowedList = windowed
+                ? new WindowedList<T>(WindowedList.createStorageDirectory(context), WINDOW_PAGES)
+                : null;
         onContentChanged();
     }
 
     @Override
     public void onContentChanged() {
         super.onContentChanged();
-        mPageIterator.reset();
-        mPreviouslyLoadedData.clear();
+        scheduleReset();
     }
 
     @Override
     protected void onReset() {
         super.onReset();
-        mPageIterator.reset();
-        mPreviouslyLoadedData.clear();
+        scheduleReset();
+        if (mWindowedList != null) {
+            mWindowedList.release();
+        }
     }
 
     @Override
-    public LoaderResult<LoadedPage> loadInBackground() {
-        if (mPageIterator.hasNext()) {
-            try {
-                Collection<T> newData = mPageIterator.next();
-                mPreviouslyLoadedData = new ArrayList<>(mPreviouslyLoadedData);
-                mPreviouslyLoadedData.addAll(newData);
-            } catch (NoSuchPageException e) {
-                // should only happen in case of an empty repo
-                return new LoaderResult<>(new LoadedPage(mPreviouslyLoadedData, false));
-            } catch (Exception e) {
-                Log.e(Gh4Application.LOG_TAG, e.getMessage(), e);
-                return new LoaderResult<>(e);
+    public void deliverResult(LoaderResult<LoadedPage> result) {
+        LoadedPage page = result.getData();
+        if (mWindowedList != null && page != null && page.mResetCount == mResetCount) {
+            if (mWindowedListOutdated) {
+                mWindowedList.clear();
+                mWindowedListOutdated = false;
+            }
+            for (Collection<T> undelivered : mUndeliveredPages) {
+                mWindowedList.addAll(undelivered);
             }
+            mUndeliveredPages.clear();
+            mWindowedList.addAll(page.results);
         }
+        super.deliverResult(result);
+    }
 
-        return new LoaderResult<>(new LoadedPage(mPreviouslyLoadedData, mPageIterator.hasNext()));
+    @Override
+    public void onCanceled(LoaderResult<LoadedPage> result) {
+        super.onCanceled(result);
+        LoadedPage page = result != null ? result.getData() : null;
+        if (mWindowedList != null && page != null && page.mResetCount == mResetCount) {
+            // the page was taken from the iterator, so we must not lose it
+            mUndeliveredPages.add(page.results);
+        }
+    }
+
+    /**
+     * Starts fetching the next page in the background, so that it's
+     * available right away once the next load is requested.
+     */
+    public void prefetchNextPage() {
+        synchronized (mPrefetchLock) {
+            if (mPrefetchTask != null || mResetPending) {
+                return;
+            }
+            final int resetCount = mResetCount;
+            mPrefetchTask = new FutureTask<>(new Callable<Collection<T>>() {
+                @Override
+                public Collection<T> call() throws Exception {
+                    // the user didn't ask for the page yet, so don't let
+                    // it compete with more important requests
+                    RateLimitScheduler.setLowPriority(true);
+                    try {
+                        synchronized (mIteratorLock) {
+                            // If a reset happened since the task was scheduled, the page
+                            // would belong to the new iteration and be lost, as the task
+                            // isn't taken by any load anymore
+                            if (mResetPending || resetCount != mResetCount
+                                    || !mPageIterator.hasNext()) {
+                                return null;
+                            }
+                            return mPageIterator.next();
+                        }
+                    } finally {
+                        RateLimitScheduler.setLowPriority(false);
+                    }
+                }
+            });
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(mPrefetchTask);
+        }
+    }
+
+    @Override
+    public LoaderResult<LoadedPage> loadInBackground() {
+        int resetCount = mResetCount;
+        File snapshotFile = mSnapshotFile;
+        mSnapshotFile = null;
+        if (snapshotFile != null) {
+            List<T> items = PagedListSnapshot.read(snapshotFile, mSnapshotItemCount);
+            synchronized (mIteratorLock) {
+                if (items != null) {
+                    // the iterator already is in the state matching the snapshot
+                    mResetPending = false;
+                    return new LoaderResult<>(addPage(items, mPageIterator.hasNext(), resetCount));
+                }
+                // Continuing from the restored iterator state would skip all items
+                // before it, so start over
+                mResetPending = true;
+            }
+        }
+        try {
+            Collection<T> newData = takePrefetchedPage();
+            synchronized (mIteratorLock) {
+                if (mResetPending) {
+                    mResetPending = false;
+                    mPageIterator.reset();
+                    mLoadedPages = new ArrayList<>();
+                    mLoadedItemCount = 0;
+                    newData = null;
+                }
+                if (newData == null && mPageIterator.hasNext()) {
+                    newData = mPageIterator.next();
+                }
+                return new LoaderResult<>(addPage(newData, mPageIterator.hasNext(), resetCount));
+            }
+        } catch (NoSuchPageException e) {
+            // should only happen in case of an empty repo
+            synchronized (mIteratorLock) {
+                return new LoaderResult<>(addPage(null, false, resetCount));
+            }
+        } catch (Exception e) {
+            Log.e(Gh4Application.LOG_TAG, e.getMessage(), e);
+            return new LoaderResult<>(e);
+        }
     }
 
     @Override
@@ -76,4 +256,62 @@ public class PageIteratorLoader<T> extends AsyncTaskLoader<LoaderResult<PageIter
     protected void onStopLoading() {
         cancelLoad();
     }
+
+    private LoadedPage addPage(Collection<T> page, boolean hasMoreData, int resetCount) {
+        int offset = mLoadedItemCount;
+        if (page == null) {
+            page = Collections.emptyList();
+        }
+        mLoadedItemCount += page.size();
+        Bundle iteratorState = mPageIterator instanceof PageIteratorWithSaveableState
+                ? ((PageIteratorWithSaveableState<T>) mPageIterator).saveState() : null;
+        if (mWindowedList != null) {
+            // the page is added to the windowed list on delivery
+            return new LoadedPage(null, page, offset, hasMoreData, iteratorState, resetCount);
+        }
+        mLoadedPages.add(page);
+        // Only the list of pages is copied here, not their contents
+        return new LoadedPage(new ArrayList<>(mLoadedPages), page, offset, hasMoreData,
+                iteratorState, resetCount);
+    }
+
+    private void scheduleReset() {
+        // The iterator is reset by the next load, so we don't need to wait
+        // for a running load or prefetch here
+        mResetPending = true;
+        mResetCount++;
+        synchronized (mPrefetchLock) {
+            if (mPrefetchTask != null) {
+                // running tasks notice the reset by themselves
+                mPrefetchTask.cancel(false);
+                mPrefetchTask = null;
+            }
+        }
+        if (mWindowedList != null) {
+            mWindowedListOutdated = true;
+            mUndeliveredPages.clear();
+        }
+    }
+
+    /**
+     * @return the page fetched by a prefetch, or null if there was no
+     *         (successful) prefetch and the page needs to be fetched normally
+     */
+    private Collection<T> takePrefetchedPage() throws InterruptedException {
+        FutureTask<Collection<T>> task;
+        synchronized (mPrefetchLock) {
+            task = mPrefetchTask;
+            mPrefetchTask = null;
+        }
+        if (task == null) {
+            return null;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // just retry the fetch, the error might have been transient
+            Log.d(Gh4Application.LOG_TAG, "Prefetching page failed", e.getCause());
+            return null;
+        }
+    }
 }
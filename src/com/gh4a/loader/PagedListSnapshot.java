@@ -0,0 +1,171 @@
+package com.gh4a.loader;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk snapshots of the items loaded into paged lists, so that the lists
+ * can be brought back without refetching when the process was killed while
+ * they were in the background. Snapshots are written in the background and
+ * replaced atomically, a snapshot being read thus is either complete or absent.
+ *
+ * As the saved instance state is written right away, a restored state may be
+ * newer than the snapshot if the process was killed before the write finished.
+ * Snapshots thus start with their item count, which is to be saved along with
+ * the state and is checked when reading.
+ */
+public class PagedListSnapshot {
+    private static final String TAG = "PagedListSnapshot";
+
+    private static final String DIR_NAME = "list-snapshots";
+    // Snapshots not written for that long most likely belong to fragments
+    // that are gone for good
+    private static final long MAX_AGE = 24 * 60 * 60 * 1000;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    private static boolean sPruned;
+
+    private PagedListSnapshot() {
+    }
+
+    public static File getFile(Context context, String id) {
+        return new File(new File(context.getCacheDir(), DIR_NAME), id);
+    }
+
+    /**
+     * Writes the given items to the snapshot file in the background. The list
+     * is copied, so it may be modified after this call returns.
+     *
+     * @see #read(File, int)
+     */
+    public static void writeAsync(final File file, List<?> items) {
+        final ArrayList<Object> copy = new ArrayList<Object>(items);
+        final boolean prune = shouldPrune();
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (prune) {
+                    prune(file.getParentFile());
+                }
+                write(file, copy);
+            }
+        });
+    }
+
+    /**
+     * Reads a snapshot. Must not be called on the main thread.
+     *
+     * @param expectedItemCount number of items the list had when the snapshot was written
+     * @return the items of the snapshot, or null if there's no usable snapshot
+     *         with the expected number of items
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> read(File file, int expectedItemCount) {
+        if (!file.exists()) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+            int itemCount = in.readInt();
+            if (itemCount != expectedItemCount) {
+                // the write of the matching snapshot didn't complete
+                Log.d(TAG, "Snapshot " + file + " has " + itemCount
+                        + " items instead of " + expectedItemCount);
+                return null;
+            }
+            List<T> items = (List<T>) in.readObject();
+            return items.size() == itemCount ? items : null;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // most likely the class layout changed with an update
+            Log.d(TAG, "Could not read snapshot " + file, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all snapshots, e.g. on logout. Must not be called on the main thread.
+     */
+    public static void clear(Context context) {
+        File[] files = new File(context.getCacheDir(), DIR_NAME).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void write(File file, List<Object> items) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(dir, file.getName() + ".tmp");
+        ObjectOutputStream out = null;
+        boolean success = false;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(items.size());
+            out.writeObject(items);
+            out.close();
+            out = null;
+            success = tempFile.renameTo(file);
+        } catch (IOException e) {
+            // most likely the items aren't serializable
+            Log.d(TAG, "Could not write snapshot " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+            if (!success) {
+                tempFile.delete();
+                // don't leave an outdated snapshot around
+                file.delete();
+            }
+        }
+    }
+
+    private static synchronized boolean shouldPrune() {
+        boolean prune = !sPruned;
+        sPruned = true;
+        return prune;
+    }
+
+    private static void prune(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long minTimestamp = System.currentTimeMillis() - MAX_AGE;
+        for (File file : files) {
+            if (file.lastModified() < minTimestamp) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gh4a.loader;
+
+import com.gh4a.RateLimitScheduler;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a set of independent API calls in parallel on a small shared pool.
+ * Usage: add() all calls, then await() them and fetch the results via
+ * {@link Result#get()}. If any of the calls fails, the remaining ones are
+ * cancelled and await() rethrows the failure. The waiting thread helps
+ * executing calls that didn't get a pool thread yet, so nesting is safe
+ * even though the pool is bounded.
+ */
+public class ParallelCalls {
+    private static final int POOL_SIZE = 4;
+
+    private static final ThreadPoolExecutor sExecutor;
+    static {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "ParallelCalls #" + mCount.getAndIncrement());
+            }
+        };
+        sExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static class Result<V> {
+        private final FutureTask<V> mTask;
+        private V mValue;
+
+        private Result(FutureTask<V> task) {
+            mTask = task;
+        }
+
+        /**
+         * @return the result of the call; only valid after await() returned
+         */
+        public V get() {
+            return mValue;
+        }
+    }
+
+    // cancel() may be called from another thread than the one adding and awaiting the calls
+    private final List<Result<?>> mResults = new CopyOnWriteArrayList<>();
+    private volatile boolean mCancelled;
+
+    public <V> Result<V> add(final Callable<V> call) {
+        final boolean lowPriority = RateLimitScheduler.isLowPriority();
+        FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                boolean wasLowPriority = RateLimitScheduler.isLowPriority();
+                RateLimitScheduler.setLowPriority(lowPriority);
+                try {
+                    return call.call();
+                } finally {
+                    RateLimitScheduler.setLowPriority(wasLowPriority);
+                }
+            }
+        });
+        Result<V> result = new Result<>(task);
+        mResults.add(result);
+        return result;
+    }
+
+    /**
+     * Runs all calls added so far and waits for them to complete.
+     *
+     * @throws Exception the first failure of any of the calls
+     */
+    public void await() throws Exception {
+        // Leave the first call to the current thread, it'd just wait otherwise
+        for (int i = 1; i < mResults.size(); i++) {
+            sExecutor.execute(mResults.get(i).mTask);
+        }
+        try {
+            for (Result<?> result : mResults) {
+                // no-op if a pool thread already picked the task up
+                result.mTask.run();
+                if (result.mTask.isDone()) {
+                    // bail out early on failure
+                    collect(result);
+                }
+            }
+            for (Result<?> result : mResults) {
+                collect(result);
+            }
+        } catch (ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (CancellationException e) {
+            cancel();
+            throw new InterruptedIOException("Calls were cancelled");
+        } catch (InterruptedException e) {
+            cancel();
+            throw new InterruptedIOException();
+        }
+        if (mCancelled) {
+            throw new InterruptedIOException("Calls were cancelled");
+        }
+    }
+
+    /**
+     * Cancels all calls that are not yet finished, interrupting running ones.
+     */
+    public void cancel() {
+        mCancelled = true;
+        for (Result<?> result : mResults) {
+            result.mTask.cancel(true);
+            sExecutor.remove(result.mTask);
+        }
+    }
+
+    private static <V> void collect(Result<V> result)
+            throws ExecutionException, InterruptedException {
+        result.mValue = result.mTask.get();
+    }
+}
@@ -3,6 +3,7 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.utils.RenderedHtmlCache;
 
 import org.eclipse.egit.github.core.CommitComment;
 import org.eclipse.egit.github.core.CommitFile;
@@ -13,6 +14,7 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class PullRequestCommentListLoader extends IssueCommentListLoader {
 
@@ -22,17 +24,40 @@ public class PullRequestCommentListLoader extends IssueCommentListLoader {
     }
 
     @Override
-    public List<IssueEventHolder> doLoadInBackground() throws IOException {
+    public List<IssueEventHolder> doLoadInBackground() throws Exception {
         // combine issue comments and pull request comments (to get comments on diff)
-        List<IssueEventHolder> events = super.doLoadInBackground();
-
-        PullRequestService pullRequestService = (PullRequestService)
+        final PullRequestService pullRequestService = (PullRequestService)
                 Gh4Application.get().getService(Gh4Application.PULL_SERVICE);
-        RepositoryId repoId = new RepositoryId(mRepoOwner, mRepoName);
-        List<CommitComment> commitComments = pullRequestService.getComments(repoId, mIssueNumber);
+        final RepositoryId repoId = new RepositoryId(mRepoOwner, mRepoName);
+
+        ParallelCalls calls = createParallelCalls();
+        ParallelCalls.Result<List<IssueEventHolder>> issueEvents =
+                calls.add(new Callable<List<IssueEventHolder>>() {
+            @Override
+            public List<IssueEventHolder> call() throws Exception {
+                return PullRequestCommentListLoader.super.doLoadInBackground();
+            }
+        });
+        ParallelCalls.Result<List<CommitComment>> comments =
+                calls.add(new Callable<List<CommitComment>>() {
+            @Override
+            public List<CommitComment> call() throws IOException {
+                return pullRequestService.getComments(repoId, mIssueNumber);
+            }
+        });
+        ParallelCalls.Result<List<CommitFile>> files = calls.add(new Callable<List<CommitFile>>() {
+            @Override
+            public List<CommitFile> call() throws IOException {
+                return pullRequestService.getFiles(repoId, mIssueNumber);
+            }
+        });
+        calls.await();
+
+        List<IssueEventHolder> events = issueEvents.get();
+        List<CommitComment> commitComments = comments.get();
         HashMap<String, CommitFile> filesByName = new HashMap<>();
 
-        for (CommitFile file : pullRequestService.getFiles(repoId, mIssueNumber)) {
+        for (CommitFile file : files.get()) {
             filesByName.put(file.getFilename(), file);
         }
 
@@ -40,6 +65,8 @@ public class PullRequestCommentListLoader extends IssueCommentListLoader {
         for (CommitComment commitComment: commitComments) {
             if (commitComment.getPosition() != -1) {
                 CommitFile file = filesByName.get(commitComment.getPath());
+                RenderedHtmlCache.prerender(getContext(), commitComment.getId(),
+                        commitComment.getUpdatedAt(), commitComment.getBodyHtml());
                 events.add(new IssueEventHolder(commitComment, file));
             }
         }
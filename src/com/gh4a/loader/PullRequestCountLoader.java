@@ -24,6 +24,11 @@ public class PullRequestCountLoader extends BaseLoader<Integer> {
         mState = state;
     }
 
+    @Override
+    protected boolean isLowPriority() {
+        return true;
+    }
+
     @Override
     public Integer doLoadInBackground() throws IOException {
         IssueService issueService = (IssueService)
@@ -11,7 +11,6 @@ import android.content.Context;
 
 import com.gh4a.DefaultClient;
 import com.gh4a.Gh4Application;
-import com.gh4a.utils.HtmlUtils;
 
 public class ReadmeLoader extends BaseLoader<String> {
 
@@ -36,7 +35,8 @@ public class ReadmeLoader extends BaseLoader<String> {
         try {
             String html = contentService.getReadmeHtml(new RepositoryId(mRepoOwner, mRepoName), mRef);
             if (html != null) {
-                return HtmlUtils.rewriteRelativeUrls(html, mRepoOwner, mRepoName, mRef);
+                // relative URLs are resolved when encoding
+                return html;
             }
         } catch (RequestException e) {
             /* don't spam logcat with 404 errors, those are normal */
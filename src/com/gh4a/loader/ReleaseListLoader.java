@@ -41,4 +41,14 @@ public class ReleaseListLoader extends BaseLoader<List<Release>> {
                 Gh4Application.get().getService(Gh4Application.REPO_SERVICE);
         return repoService.getReleases(new RepositoryId(repoOwner, repoName));
     }
+
+    @Override
+    protected String getCacheKey() {
+        return mRepoOwner + "/" + mRepoName;
+    }
+
+    @Override
+    protected long getCacheMaxAge() {
+        return 60 * 60 * 1000;
+    }
 }
@@ -3,6 +3,7 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
 import com.gh4a.utils.ApiHelpers;
 
 import org.eclipse.egit.github.core.Repository;
@@ -30,25 +31,33 @@ public class RepositoryListLoader extends BaseLoader<Collection<Repository>> {
     @Override
     public Collection<Repository> doLoadInBackground() throws IOException {
         Gh4Application app = Gh4Application.get();
-        RepositoryService repoService = (RepositoryService) app.getService(Gh4Application.REPO_SERVICE);
-        if (ApiHelpers.loginEquals(mLogin, app.getAuthLogin())) {
-            if (mSize > 0) {
+        final RepositoryService repoService =
+                (RepositoryService) app.getService(Gh4Application.REPO_SERVICE);
+        final boolean isSelf = ApiHelpers.loginEquals(mLogin, app.getAuthLogin());
+        final boolean isOrg = ApiHelpers.UserType.ORG.equals(mUserType);
+
+        if (mSize > 0) {
+            if (isSelf) {
                 return repoService.pageRepositories(mFilterData, mSize).next();
-            } else {
-                return repoService.getRepositories(mFilterData);
-            }
-        } else if (ApiHelpers.UserType.ORG.equals(mUserType)) {
-            if (mSize > 0) {
+            } else if (isOrg) {
                 return repoService.pageOrgRepositories(mLogin, mFilterData, mSize).next();
             } else {
-                return repoService.getOrgRepositories(mLogin, mFilterData);
-            }
-        } else {
-            if (mSize > 0) {
                 return repoService.pageRepositories(mLogin, mFilterData, mSize).next();
-            } else {
-                return repoService.getRepositories(mLogin, mFilterData);
             }
         }
+
+        return PageIteratorWithSaveableState.loadAllPagesInParallel(
+                new PageIteratorWithSaveableState.PageDrain<Collection<Repository>>() {
+            @Override
+            public Collection<Repository> load() throws IOException {
+                if (isSelf) {
+                    return repoService.getRepositories(mFilterData);
+                } else if (isOrg) {
+                    return repoService.getOrgRepositories(mLogin, mFilterData);
+                } else {
+                    return repoService.getRepositories(mLogin, mFilterData);
+                }
+            }
+        });
     }
 }
@@ -11,6 +11,7 @@ import org.eclipse.egit.github.core.service.RepositoryService;
 import android.content.Context;
 
 import com.gh4a.Gh4Application;
+import com.gh4a.PageIteratorWithSaveableState;
 
 public class TagListLoader extends BaseLoader<List<RepositoryTag>> {
     private final String mRepoOwner;
@@ -24,9 +25,15 @@ public class TagListLoader extends BaseLoader<List<RepositoryTag>> {
 
     @Override
     public List<RepositoryTag> doLoadInBackground() throws IOException {
-        RepositoryService repoService = (RepositoryService)
+        final RepositoryService repoService = (RepositoryService)
                 Gh4Application.get().getService(Gh4Application.REPO_SERVICE);
-        List<RepositoryTag> tags = repoService.getTags(new RepositoryId(mRepoOwner, mRepoName));
+        List<RepositoryTag> tags = PageIteratorWithSaveableState.loadAllPagesInParallel(
+                new PageIteratorWithSaveableState.PageDrain<List<RepositoryTag>>() {
+            @Override
+            public List<RepositoryTag> load() throws IOException {
+                return repoService.getTags(new RepositoryId(mRepoOwner, mRepoName));
+            }
+        });
         ArrayList<RepositoryTag> result = new ArrayList<>();
 
         if (tags != null) {
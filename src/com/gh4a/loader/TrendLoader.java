@@ -3,6 +3,7 @@ package com.gh4a.loader;
 import android.content.Context;
 
 import com.gh4a.holder.Trend;
+import com.gh4a.utils.HttpUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -37,7 +38,7 @@ public class TrendLoader extends BaseLoader<List<Trend>> {
         CharArrayWriter writer = null;
 
         try {
-            connection = (HttpURLConnection) url.openConnection();
+            connection = HttpUtils.openConnection(url);
             connection.setRequestMethod("GET");
             connection.setRequestProperty("Content-Type", "application/json");
 
@@ -0,0 +1,261 @@
+package com.gh4a.utils;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded on-disk store of downscaled avatar bitmaps, together with
+ * the validators needed to revalidate them via conditional requests.
+ * Bitmaps are stored compressed, so they need to be decoded on read.
+ */
+public class AvatarDiskCache {
+    private static final String TAG = "AvatarDiskCache";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX_TEMP = ".tmp";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private long mSize;
+    // key -> size in bytes, in LRU order
+    private LinkedHashMap<String, Long> mEntries;
+
+    public static class Entry {
+        public final byte[] data;
+        public final long timestamp;
+        public final String etag;
+        public final String lastModified;
+
+        private Entry(byte[] data, long timestamp, String etag, String lastModified) {
+            this.data = data;
+            this.timestamp = timestamp;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        public boolean isFresh(long maxAge) {
+            long age = System.currentTimeMillis() - timestamp;
+            return age >= 0 && age < maxAge;
+        }
+
+        public boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+
+        public void addConditionalHeaders(HttpURLConnection connection) {
+            if (etag != null) {
+                connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+    }
+
+    public AvatarDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    public static String makeKey(int userId, int sizePx) {
+        return userId + "_" + sizePx;
+    }
+
+    public synchronized Entry get(String key) {
+        ensureInitialized();
+        if (!mEntries.containsKey(key)) {
+            return null;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(getFile(key))));
+            if (is.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported cache entry format");
+            }
+            long timestamp = is.readLong();
+            String etag = readOptionalString(is);
+            String lastModified = readOptionalString(is);
+            byte[] data = new byte[is.readInt()];
+            is.readFully(data);
+            // touch entry to update LRU order
+            mEntries.get(key);
+            return new Entry(data, timestamp, etag, lastModified);
+        } catch (IOException e) {
+            Log.d(TAG, "Dropping unreadable cache entry " + key, e);
+            removeEntry(key);
+            return null;
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the bitmap along with the validators of the response it was decoded from.
+     */
+    public void put(String key, Bitmap bitmap, HttpURLConnection connection) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        // WebP is much more compact, but can't keep transparency on all
+        // supported platform versions
+        Bitmap.CompressFormat format = bitmap.hasAlpha()
+                ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.WEBP;
+        if (!bitmap.compress(format, 90, bos)) {
+            return;
+        }
+        write(key, new Entry(bos.toByteArray(), System.currentTimeMillis(),
+                connection.getHeaderField(HEADER_ETAG),
+                connection.getHeaderField(HEADER_LAST_MODIFIED)));
+    }
+
+    /**
+     * Marks an entry as validated just now, after the server confirmed it's unchanged.
+     */
+    public void markValidated(String key, Entry entry) {
+        write(key, new Entry(entry.data, System.currentTimeMillis(),
+                entry.etag, entry.lastModified));
+    }
+
+    private void write(String key, Entry entry) {
+        synchronized (this) {
+            ensureInitialized();
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                return;
+            }
+        }
+
+        File tempFile = new File(mDirectory,
+                key + "." + Thread.currentThread().getId() + SUFFIX_TEMP);
+        DataOutputStream out = null;
+        boolean success = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(entry.timestamp);
+            writeOptionalString(out, entry.etag);
+            writeOptionalString(out, entry.lastModified);
+            out.writeInt(entry.data.length);
+            out.write(entry.data);
+            out.close();
+            out = null;
+            synchronized (this) {
+                File target = getFile(key);
+                if (tempFile.renameTo(target)) {
+                    putEntry(key, target.length());
+                    success = true;
+                }
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Could not write cache entry " + key, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, key);
+    }
+
+    private void ensureInitialized() {
+        if (mEntries != null) {
+            return;
+        }
+        mEntries = new LinkedHashMap<>(64, 0.75f, true);
+        mSize = 0;
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX_TEMP)) {
+                // leftover from an interrupted write
+                file.delete();
+            } else {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private void putEntry(String key, long size) {
+        Long oldSize = mEntries.put(key, size);
+        if (oldSize != null) {
+            mSize -= oldSize;
+        }
+        mSize += size;
+        trimToSize();
+    }
+
+    private void removeEntry(String key) {
+        Long size = mEntries.remove(key);
+        if (size != null) {
+            mSize -= size;
+        }
+        getFile(key).delete();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iter = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            getFile(entry.getKey()).delete();
+            mSize -= entry.getValue();
+            iter.remove();
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readOptionalString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
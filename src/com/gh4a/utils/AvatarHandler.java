@@ -1,10 +1,19 @@
 package com.gh4a.utils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.egit.github.core.User;
 
@@ -12,17 +21,23 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
+import android.os.AsyncTask;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
-import android.support.v4.graphics.drawable.RoundedBitmapDrawable;
-import android.support.v4.graphics.drawable.RoundedBitmapDrawableFactory;
-import android.support.v4.util.LruCache;
 import android.support.v4.util.SparseArrayCompat;
 import android.util.Log;
+import android.view.View;
 import android.widget.ImageView;
 
 import com.gh4a.R;
@@ -31,52 +46,127 @@ public class AvatarHandler {
     private static final String TAG = "GravatarHandler";
 
     private static final int MAX_CACHED_IMAGE_SIZE = 60; /* dp - maximum gravatar view size used */
+    private static final long MAX_DISK_CACHE_SIZE = 5 * 1024 * 1024;
+    // Stored avatars older than that are revalidated after being shown
+    private static final long DISK_CACHE_MAX_AGE = 24 * 60 * 60 * 1000;
+    private static final int LOADER_THREADS = 3;
+
+    // Task priorities, lower values are run first
+    private static final int PRIORITY_VIEW = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+    private static final int PRIORITY_REVALIDATION = 2;
+    // Prefetches beyond that are dropped, so they don't pile up e.g. for restored long lists
+    private static final int MAX_PENDING_PREFETCHES = 50;
 
     private static Bitmap sDefaultAvatarBitmap;
-    private static LruCache<Integer, Bitmap> sCache;
+    private static MemoryCache sCache;
+    // Intermediate decoding results, which are never displayed
+    private static final BitmapPool sBitmapPool = new BitmapPool(LOADER_THREADS * 2);
+    private static AvatarDiskCache sDiskCache;
     private static int sNextRequestId = 1;
+    private static int sPendingPrefetches;
+    private static long sNextSequence = 1;
 
     private static class Request {
         int id;
+        int requestId;
         String url;
+        String sourceUrl;
         ArrayList<ImageView> views;
+        LoadTask task;
+        // whether no view asked for the avatar yet
+        boolean prefetch;
     }
+    // Pending requests by user id
     private static final SparseArrayCompat<Request> sRequests = new SparseArrayCompat<>();
+
+    // Kept as view tag, so we can find the request a view waits for without searching
+    private static class ViewState {
+        final AvatarDrawable drawable = new AvatarDrawable();
+        Request request;
+        // set while the view is detached and thus not waiting for its avatar
+        int parkedUserId;
+        String parkedUrl;
+    }
     private static int sMaxImageSizePx = -1;
 
-    private static final int MSG_LOAD = 1;
-    private static final int MSG_LOADED = 2;
-    private static final int MSG_DESTROY = 3;
+    private static final int MSG_LOADED = 1;
+    private static final int MSG_UPDATED = 2;
 
-    private static HandlerThread sWorkerThread = null;
-    private static Handler sWorkerHandler = null;
+    private static final ThreadPoolExecutor sExecutor;
+    static {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
 
-    private static final Handler sHandler = new Handler() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GravatarLoader #" + mCount.getAndIncrement());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        };
+        // The queue orders the tasks by priority, see LoadTask.compareTo()
+        sExecutor = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 3, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), factory);
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG_LOADED:
-                    processResult(msg.arg1, (Bitmap) msg.obj);
-                    if (sRequests.size() == 0) {
-                        sendEmptyMessageDelayed(MSG_DESTROY, 3000);
-                    }
+                    processResult(msg.arg1, msg.arg2, (Bitmap) msg.obj);
                     break;
-                case MSG_DESTROY:
-                    shutdownWorker();
+                case MSG_UPDATED:
+                    // the avatar changed since it was stored, so use the new one from now on
+                    sCache.put(msg.arg1, (Bitmap) msg.obj);
                     break;
             }
         }
 
-        private void processResult(int requestId, Bitmap bitmap) {
-            final Request request = sRequests.get(requestId);
-            if (request != null && bitmap != null) {
-                sCache.put(request.id, bitmap);
-
-                for (ImageView view : request.views) {
+        private void processResult(int userId, int requestId, Bitmap bitmap) {
+            if (bitmap != null) {
+                sCache.put(userId, bitmap);
+            }
+            final Request request = sRequests.get(userId);
+            // A failed load of an earlier, cancelled request must not end the current one
+            if (request == null || (bitmap == null && request.requestId != requestId)) {
+                return;
+            }
+            for (ImageView view : request.views) {
+                if (bitmap != null) {
                     applyAvatarToView(view, bitmap);
                 }
+                getViewState(view).request = null;
+            }
+            if (request.prefetch) {
+                sPendingPrefetches--;
+            }
+            sRequests.remove(userId);
+        }
+    };
+
+    // Views scrolled out of a list are detached; nobody waits for their avatar
+    // anymore until they're attached again or rebound to a different user.
+    private static final View.OnAttachStateChangeListener sAttachStateListener =
+            new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            ViewState state = getViewState(v);
+            if (state.parkedUserId > 0) {
+                assignAvatar((ImageView) v, state.parkedUserId, state.parkedUrl);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            ViewState state = getViewState(v);
+            Request request = removeOldRequest((ImageView) v, state);
+            if (request != null) {
+                state.parkedUserId = request.id;
+                state.parkedUrl = request.sourceUrl;
             }
-            sRequests.delete(requestId);
         }
     };
 
@@ -90,7 +180,16 @@ public class AvatarHandler {
     }
 
     public static void assignAvatar(ImageView view, int userId, String url) {
-        removeOldRequest(view);
+        ViewState state = getViewState(view);
+        if (state == null) {
+            state = new ViewState();
+            view.setTag(R.id.AvatarState, state);
+            view.addOnAttachStateChangeListener(sAttachStateListener);
+        } else {
+            removeOldRequest(view, state);
+            state.parkedUserId = 0;
+            state.parkedUrl = null;
+        }
 
         if (sCache == null) {
             initialize(view.getContext());
@@ -106,29 +205,85 @@ public class AvatarHandler {
             return;
         }
 
-        Request request = getRequestForId(userId);
+        Request request = sRequests.get(userId);
         if (request != null) {
             request.views.add(view);
+            state.request = request;
+            if (request.prefetch) {
+                request.prefetch = false;
+                sPendingPrefetches--;
+            }
+            // The newest request wins, so move it to the front if it didn't start yet.
+            // Removing the queued task would mean searching the queue, so the
+            // old task is disarmed instead and a new one is queued.
+            if (request.task.disarm()) {
+                startTask(request);
+            }
             return;
         }
 
-        int requestId = sNextRequestId++;
         request = new Request();
         request.id = userId;
+        request.requestId = sNextRequestId++;
+        request.sourceUrl = url;
         request.url = makeUrl(url, userId);
         request.views = new ArrayList<>();
         request.views.add(view);
-        sRequests.put(requestId, request);
+        state.request = request;
+        sRequests.put(userId, request);
+        startTask(request);
+    }
+
+    /**
+     * Loads the avatar of the user into the memory cache at low priority, so
+     * it's available right away once it's needed. Loads requested by views
+     * take precedence; a view requesting the avatar later joins the prefetch.
+     * Nothing is queued if too many prefetches are pending already.
+     * Must be called on the main thread.
+     */
+    public static void prefetchAvatar(Context context, User user) {
+        if (user == null || user.getId() <= 0) {
+            return;
+        }
+        if (sCache == null) {
+            initialize(context);
+        }
+        int userId = user.getId();
+        if (sPendingPrefetches >= MAX_PENDING_PREFETCHES
+                || sRequests.get(userId) != null || sCache.get(userId) != null) {
+            return;
+        }
+
+        Request request = new Request();
+        request.id = userId;
+        request.requestId = sNextRequestId++;
+        request.sourceUrl = user.getAvatarUrl();
+        request.url = makeUrl(request.sourceUrl, userId);
+        request.views = new ArrayList<>();
+        request.prefetch = true;
+        sPendingPrefetches++;
+        sRequests.put(userId, request);
+        startTask(request, PRIORITY_PREFETCH);
+    }
 
-        sHandler.removeMessages(MSG_DESTROY);
-        if (sWorkerThread == null) {
-            sWorkerThread = new HandlerThread("GravatarLoader");
-            sWorkerThread.start();
-            sWorkerHandler = new WorkerHandler(sWorkerThread.getLooper());
+    public static void prefetchAvatars(Context context, Collection<User> users) {
+        for (User user : users) {
+            prefetchAvatar(context, user);
         }
-        Message msg = sWorkerHandler.obtainMessage(MSG_LOAD,
-                requestId, view.getWidth(), request.url);
-        msg.sendToTarget();
+    }
+
+    private static void startTask(Request request) {
+        startTask(request, PRIORITY_VIEW);
+    }
+
+    private static void startTask(Request request, int priority) {
+        request.task = new LoadTask(request.requestId, request.id, request.url, priority);
+        request.task.sequence = sNextSequence++;
+        sExecutor.execute(request.task);
+    }
+
+    private static ViewState getViewState(View view) {
+        return (ViewState) view.getTag(R.id.AvatarState);
     }
 
     private static void initialize(Context context) {
@@ -136,28 +291,14 @@ public class AvatarHandler {
         // Use 10% of the available memory or 1MB for the cache, whatever is larger
         final int limit = Math.max(maxMemory / 10, 1024);
 
-        sCache = new LruCache<Integer, Bitmap>(limit) {
-            @Override
-            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue, Bitmap newValue) {
-                super.entryRemoved(evicted, key, oldValue, newValue);
-                oldValue.recycle();
-            }
-
-            @Override
-            protected int sizeOf(Integer key, Bitmap value) {
-                final long sizeInBytes;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                    sizeInBytes = value.getAllocationByteCount();
-                } else {
-                    sizeInBytes = value.getRowBytes() * value.getHeight();
-                }
-                return (int) (sizeInBytes / 1024);
-            }
-        };
+        sCache = new MemoryCache(limit);
 
         Resources res = context.getResources();
-        sDefaultAvatarBitmap = BitmapFactory.decodeResource(res, R.drawable.default_avatar);
         sMaxImageSizePx = Math.round(res.getDisplayMetrics().density * MAX_CACHED_IMAGE_SIZE);
+        sDefaultAvatarBitmap = createClippedAvatar(
+                BitmapFactory.decodeResource(res, R.drawable.default_avatar));
+        sDiskCache = new AvatarDiskCache(new File(context.getCacheDir(), "avatars"),
+                MAX_DISK_CACHE_SIZE);
     }
 
     private static String makeUrl(String url, int userId) {
@@ -170,111 +311,396 @@ public class AvatarHandler {
     }
 
     private static void applyAvatarToView(ImageView view, Bitmap avatar) {
-        RoundedBitmapDrawable d = RoundedBitmapDrawableFactory.create(view.getResources(), avatar);
-        d.setCornerRadius(Math.max(avatar.getWidth() / 2, avatar.getHeight() / 2));
-        d.setAntiAlias(true);
-        view.setImageDrawable(d);
+        // The drawable is reused across binds, so binding doesn't allocate anything
+        AvatarDrawable drawable = getViewState(view).drawable;
+        drawable.setBitmap(avatar);
+        if (view.getDrawable() != drawable) {
+            view.setImageDrawable(drawable);
+        }
     }
 
-    private static Request getRequestForId(int id) {
-        int count = sRequests.size();
-        for (int i = 0; i < count; i++) {
-            Request request = sRequests.valueAt(i);
-            if (request.id == id) {
-                return request;
-            }
+    /**
+     * Scales the source bitmap to the avatar size and clips it to a circle,
+     * so it can be drawn as is. Intended for the worker threads, except
+     * for the default avatar.
+     */
+    private static Bitmap createClippedAvatar(Bitmap source) {
+        int size = sMaxImageSizePx;
+        Bitmap output = sBitmapPool.get(size, size, Bitmap.Config.ARGB_8888);
+        if (output == null) {
+            output = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
         }
-        return null;
+
+        // Scale to cover the whole circle, centering the source
+        float scale = Math.max((float) size / source.getWidth(),
+                (float) size / source.getHeight());
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postTranslate((size - scale * source.getWidth()) / 2,
+                (size - scale * source.getHeight()) / 2);
+
+        BitmapShader shader = new BitmapShader(source,
+                Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(matrix);
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        paint.setShader(shader);
+
+        float radius = size / 2f;
+        new Canvas(output).drawCircle(radius, radius, radius, paint);
+        return output;
     }
 
-    private static void removeOldRequest(ImageView view) {
-        int count = sRequests.size();
-        for (int i = 0; i < count; i++) {
-            Request request = sRequests.valueAt(i);
-            if (request.views.contains(view)) {
-                request.views.remove(view);
-                if (request.views.isEmpty()) {
-                    if (sWorkerHandler != null) {
-                        sWorkerHandler.removeMessages(MSG_LOAD, request.url);
-                    }
-                    sRequests.delete(sRequests.keyAt(i));
+    /**
+     * @return the request the view was waiting for, if any
+     */
+    private static Request removeOldRequest(ImageView view, ViewState state) {
+        Request request = state.request;
+        if (request == null) {
+            return null;
+        }
+        state.request = null;
+        request.views.remove(view);
+        if (request.views.isEmpty() && sRequests.get(request.id) == request) {
+            request.task.cancel();
+            sRequests.remove(request.id);
+        }
+        return request;
+    }
+
+    private static Bitmap loadFromDisk(AvatarDiskCache.Entry entry) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(entry.data, 0, entry.data.length, options);
+        options.inScaled = false;
+
+        Bitmap stored = sBitmapPool.decode(entry.data, options);
+        if (stored == null) {
+            return null;
+        }
+        Bitmap avatar = createClippedAvatar(stored);
+        sBitmapPool.put(stored);
+        return avatar;
+    }
+
+    /**
+     * Fetches the avatar and stores it in the disk cache.
+     *
+     * @param cached stored entry to revalidate, or null
+     * @return the fetched avatar, or null if it didn't change since
+     *         the cached entry was stored or couldn't be decoded
+     */
+    private static Bitmap fetchBitmap(LoadTask task, String cacheKey,
+            AvatarDiskCache.Entry cached) throws IOException {
+        HttpURLConnection connection = task.openConnection();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InputStream input = null;
+        try {
+            if (cached != null) {
+                cached.addConditionalHeaders(connection);
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    sDiskCache.markValidated(cacheKey, cached);
+                    return null;
                 }
-                return;
             }
+            input = connection.getInputStream();
+            byte[] buffer = new byte[2048];
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+
+            if (task.isCancelled()) {
+                return null;
+            }
+            byte[] data = output.toByteArray();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+            final int widthRatio = options.outWidth / sMaxImageSizePx;
+            final int heightRatio = options.outHeight / sMaxImageSizePx;
+            options.inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
+
+            Bitmap decoded = sBitmapPool.decode(data, options);
+            if (decoded == null) {
+                return null;
+            }
+            // Store the unclipped bitmap, as transparency doesn't survive the
+            // compact disk format on all platform versions
+            sDiskCache.put(cacheKey, decoded, connection);
+            Bitmap avatar = createClippedAvatar(decoded);
+            sBitmapPool.put(decoded);
+            return avatar;
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+            task.closeConnection();
         }
     }
 
-    private static Bitmap fetchBitmap(String url) throws IOException {
-        URL realUrl = new URL(url);
-        InputStream input = realUrl.openStream();
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        byte[] buffer = new byte[2048];
-        int read;
+    private static class LoadTask implements Runnable, Comparable<LoadTask> {
+        private final int mRequestId;
+        private final int mUserId;
+        private final String mUrl;
+        private final int mPriority;
+        // only changed while the task isn't queued
+        long sequence;
+
+        private volatile boolean mCancelled;
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        // guarded by this
+        private HttpURLConnection mConnection;
+
+        public LoadTask(int requestId, int userId, String url, int priority) {
+            mRequestId = requestId;
+            mUserId = userId;
+            mUrl = url;
+            mPriority = priority;
+        }
 
-        while ((read = input.read(buffer)) != -1) {
-            output.write(buffer, 0, read);
+        @Override
+        public int compareTo(LoadTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            int order = sequence > other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+            // Newest first for views: the views that requested last are the most likely
+            // to still be visible. Oldest first for prefetches, which come in list order.
+            return mPriority == PRIORITY_VIEW ? order : -order;
         }
 
-        byte[] data = output.toByteArray();
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
+        @Override
+        public void run() {
+            if (mCancelled || !mClaimed.compareAndSet(false, true)) {
+                return;
+            }
+            Bitmap bitmap = null;
+            try {
+                if (mPriority == PRIORITY_REVALIDATION) {
+                    revalidate();
+                    return;
+                }
+                bitmap = load();
+            } catch (IOException e) {
+                if (!mCancelled) {
+                    Log.e(TAG, "Couldn't fetch gravatar from URL " + mUrl, e);
+                }
+            }
+            sHandler.obtainMessage(MSG_LOADED, mUserId, mRequestId, bitmap).sendToTarget();
+        }
 
-        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        private Bitmap load() throws IOException {
+            String cacheKey = AvatarDiskCache.makeKey(mUserId, sMaxImageSizePx);
+            AvatarDiskCache.Entry entry = sDiskCache.get(cacheKey);
+            Bitmap bitmap = entry != null ? loadFromDisk(entry) : null;
+            if (bitmap == null) {
+                return fetchBitmap(this, cacheKey, null);
+            }
+            if (!entry.isFresh(DISK_CACHE_MAX_AGE)) {
+                sExecutor.execute(new LoadTask(0, mUserId, mUrl, PRIORITY_REVALIDATION));
+            }
+            return bitmap;
+        }
 
-        options.inJustDecodeBounds = false;
+        private void revalidate() throws IOException {
+            String cacheKey = AvatarDiskCache.makeKey(mUserId, sMaxImageSizePx);
+            AvatarDiskCache.Entry entry = sDiskCache.get(cacheKey);
+            if (entry == null || entry.isFresh(DISK_CACHE_MAX_AGE)) {
+                return;
+            }
+            Bitmap bitmap = fetchBitmap(this, cacheKey, entry.canRevalidate() ? entry : null);
+            if (bitmap != null) {
+                sHandler.obtainMessage(MSG_UPDATED, mUserId, 0, bitmap).sendToTarget();
+            }
+        }
 
-        final int widthRatio = options.outWidth / sMaxImageSizePx;
-        final int heightRatio = options.outHeight / sMaxImageSizePx;
-        options.inSampleSize = heightRatio < widthRatio ? heightRatio : widthRatio;
+        public synchronized HttpURLConnection openConnection() throws IOException {
+            if (mCancelled) {
+                throw new InterruptedIOException("Avatar load was cancelled");
+            }
+            mConnection = HttpUtils.openConnection(mUrl);
+            return mConnection;
+        }
 
-        Bitmap unscaled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
-        if (unscaled == null) {
-            return null;
+        public synchronized void closeConnection() {
+            if (mConnection != null) {
+                mConnection.disconnect();
+                mConnection = null;
+            }
         }
 
-        // We'll scale the image to the desired density
-        unscaled.setDensity(0);
+        public boolean isCancelled() {
+            return mCancelled;
+        }
 
-        float widthScale = (float) sMaxImageSizePx / (float) unscaled.getWidth();
-        float heightScale = (float) sMaxImageSizePx / (float) unscaled.getHeight();
-        float scaleFactor = Math.min(1, Math.min(widthScale, heightScale));
+        /**
+         * Makes sure the task won't run anymore, unless it already started.
+         *
+         * @return true if the task won't run
+         */
+        public boolean disarm() {
+            return mClaimed.compareAndSet(false, true);
+        }
 
-        Bitmap scaled = Bitmap.createScaledBitmap(unscaled,
-                (int) (scaleFactor * unscaled.getWidth()),
-                (int) (scaleFactor * unscaled.getHeight()), true);
-        if (scaled != unscaled) {
-            unscaled.recycle();
+        /**
+         * Makes the task do nothing if it's still queued, and aborts its
+         * download if it's running. Must be called on the main thread.
+         */
+        public void cancel() {
+            mCancelled = true;
+            final HttpURLConnection connection;
+            synchronized (this) {
+                connection = mConnection;
+            }
+            if (connection != null) {
+                // Closing the socket may involve network I/O, so don't do it here
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        connection.disconnect();
+                    }
+                });
+            }
         }
-        return scaled;
     }
 
-    private static void shutdownWorker() {
-        if (sWorkerThread != null) {
-            sWorkerThread.getLooper().quit();
-            sWorkerHandler = null;
-            sWorkerThread = null;
+    /**
+     * LRU cache of the avatars by user id. Unlike LruCache, it doesn't need
+     * to box the keys, so lookups don't allocate. Main thread only.
+     */
+    private static class MemoryCache {
+        private static class Node {
+            int key;
+            int size;
+            Bitmap bitmap;
+            Node prev;
+            Node next;
+        }
+
+        private final SparseArrayCompat<Node> mNodes = new SparseArrayCompat<>();
+        // Sentinel of the usage list; head.next is the most recently used node
+        private final Node mHead = new Node();
+        private final int mMaxSize;
+        private int mSize;
+
+        /**
+         * @param maxSize maximum size in kB
+         */
+        public MemoryCache(int maxSize) {
+            mMaxSize = maxSize;
+            mHead.prev = mHead;
+            mHead.next = mHead;
+        }
+
+        public Bitmap get(int key) {
+            Node node = mNodes.get(key);
+            if (node == null) {
+                return null;
+            }
+            unlink(node);
+            linkFirst(node);
+            return node.bitmap;
+        }
+
+        public void put(int key, Bitmap bitmap) {
+            Node node = mNodes.get(key);
+            if (node != null) {
+                // The replaced bitmap might still be displayed, so leave it to the GC
+                mSize -= node.size;
+                unlink(node);
+            } else {
+                node = new Node();
+                node.key = key;
+                mNodes.put(key, node);
+            }
+            node.bitmap = bitmap;
+            node.size = sizeOf(bitmap);
+            mSize += node.size;
+            linkFirst(node);
+
+            while (mSize > mMaxSize && mHead.prev != node) {
+                Node eldest = mHead.prev;
+                unlink(eldest);
+                mNodes.remove(eldest.key);
+                mSize -= eldest.size;
+                // Not pooled, as drawables of views we don't know about anymore
+                // may still display it; leave it to the GC like replaced bitmaps
+            }
+        }
+
+        private void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+        }
+
+        private void linkFirst(Node node) {
+            node.next = mHead.next;
+            node.prev = mHead;
+            mHead.next.prev = node;
+            mHead.next = node;
+        }
+
+        private static int sizeOf(Bitmap value) {
+            final long sizeInBytes;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                sizeInBytes = value.getAllocationByteCount();
+            } else {
+                sizeInBytes = value.getRowBytes() * value.getHeight();
+            }
+            return (int) (sizeInBytes / 1024);
         }
     }
 
-    private static class WorkerHandler extends Handler {
-        public WorkerHandler(Looper looper) {
-            super(looper);
+    /**
+     * Draws a pre-clipped avatar. One instance is kept per view and
+     * switched to the respective avatar on bind.
+     */
+    private static class AvatarDrawable extends Drawable {
+        private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+        private Bitmap mBitmap;
+
+        public void setBitmap(Bitmap bitmap) {
+            if (bitmap != mBitmap) {
+                mBitmap = bitmap;
+                invalidateSelf();
+            }
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_LOAD:
-                    String url = (String) msg.obj;
-                    Bitmap bitmap = null;
-                    try {
-                        bitmap = fetchBitmap(url);
-                    } catch (IOException e) {
-                        Log.e(TAG, "Couldn't fetch gravatar from URL " + url, e);
-                    }
-                    sHandler.obtainMessage(MSG_LOADED, msg.arg1, 0, bitmap).sendToTarget();
-                    break;
+        public void draw(Canvas canvas) {
+            if (mBitmap != null && !mBitmap.isRecycled()) {
+                canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
             }
         }
+
+        @Override
+        public int getIntrinsicWidth() {
+            // all avatars have the same size, so the view's layout doesn't depend on them
+            return sMaxImageSizePx;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return sMaxImageSizePx;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            mPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter colorFilter) {
+            mPaint.setColorFilter(colorFilter);
+            invalidateSelf();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
     }
-}
\ No newline at end of file
+}
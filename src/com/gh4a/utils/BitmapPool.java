@@ -0,0 +1,99 @@
+package com.gh4a.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayList;
+
+/**
+ * Small pool of mutable bitmaps that are no longer displayed, to be reused
+ * as decoding targets (via {@link BitmapFactory.Options#inBitmap}) or as
+ * drawing targets instead of allocating new ones. Thread safe.
+ */
+public class BitmapPool {
+    private final int mMaxCount;
+    private final ArrayList<Bitmap> mBitmaps = new ArrayList<>();
+
+    public BitmapPool(int maxCount) {
+        mMaxCount = maxCount;
+    }
+
+    /**
+     * Hands a bitmap to the pool. The caller must not use it afterwards.
+     * Bitmaps that can't be reused are left to the GC.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+                || mBitmaps.size() >= mMaxCount) {
+            return;
+        }
+        mBitmaps.add(bitmap);
+    }
+
+    /**
+     * @return a pooled bitmap of exactly the given dimensions and configuration,
+     *         cleared to transparent, or null if there's none
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (this) {
+            for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+                Bitmap candidate = mBitmaps.get(i);
+                if (candidate.getWidth() == width && candidate.getHeight() == height
+                        && candidate.getConfig() == config) {
+                    bitmap = mBitmaps.remove(i);
+                    break;
+                }
+            }
+        }
+        if (bitmap != null) {
+            bitmap.eraseColor(0);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes the data, reusing a pooled bitmap for that if possible.
+     *
+     * @param options decoding options, with the outWidth and outHeight
+     *                fields set by a previous bounds-only decode
+     */
+    public Bitmap decode(byte[] data, BitmapFactory.Options options) {
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = takeForDecode(options);
+        if (options.inBitmap != null) {
+            try {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            } catch (IllegalArgumentException e) {
+                // the decoder didn't accept the bitmap after all
+                options.inBitmap = null;
+            }
+        }
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private synchronized Bitmap takeForDecode(BitmapFactory.Options options) {
+        int sampleSize = Math.max(1, options.inSampleSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = options.inPreferredConfig != null
+                ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+
+        for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+            Bitmap candidate = mBitmaps.get(i);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                // any large enough bitmap can be reconfigured
+                int bytesPerPixel = config == Bitmap.Config.ARGB_8888 ? 4 : 2;
+                if (candidate.getAllocationByteCount() >= width * height * bytesPerPixel) {
+                    return mBitmaps.remove(i);
+                }
+            } else if (sampleSize == 1 && candidate.getWidth() == width
+                    && candidate.getHeight() == height && candidate.getConfig() == config) {
+                return mBitmaps.remove(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+package com.gh4a.utils;
+
+import org.ccil.cowan.tagsoup.HTMLSchema;
+import org.ccil.cowan.tagsoup.Parser;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+/**
+ * The parts of {@link HtmlUtils}' HTML conversion that don't depend on the
+ * Android framework: TagSoup parser handling and URL resolution. Kept separate
+ * so that they can be run on the JVM by the benchmark module.
+ */
+public class HtmlParsers {
+    /**
+     * Lazy initialization holder for the HTML schema.
+     */
+    private static class SchemaHolder {
+        private static final HTMLSchema schema = new HTMLSchema();
+    }
+
+    /**
+     * Parsers are expensive to set up, but can parse any number of documents
+     * in sequence, so every thread keeps one around.
+     */
+    private static final ThreadLocal<Parser> sParsers = new ThreadLocal<>();
+
+    private HtmlParsers() {
+    }
+
+    /**
+     * @return the current thread's parser, which must be handed back via
+     *         {@link #release(Parser)} once parsing is done. A new one is
+     *         created if the thread's parser is in use (e.g. by an image
+     *         getter encoding HTML itself).
+     */
+    public static Parser take() {
+        Parser parser = sParsers.get();
+        if (parser == null) {
+            return create();
+        }
+        sParsers.set(null);
+        return parser;
+    }
+
+    public static void release(Parser parser) {
+        // don't keep the content handler alive
+        parser.setContentHandler(null);
+        sParsers.set(parser);
+    }
+
+    public static Parser create() {
+        Parser parser = new Parser();
+        try {
+            parser.setProperty(Parser.schemaProperty, SchemaHolder.schema);
+        } catch (SAXNotRecognizedException e) {
+            // Should not happen.
+            throw new RuntimeException(e);
+        } catch (SAXNotSupportedException e) {
+            // Should not happen.
+            throw new RuntimeException(e);
+        }
+        return parser;
+    }
+
+    /**
+     * Makes URLs relative to the document absolute.
+     *
+     * @param baseUrl URL relative URLs are resolved against, or null to keep them
+     */
+    public static String resolveUrl(String baseUrl, String url) {
+        if (baseUrl == null || url == null || url.contains("://") || url.startsWith("#")) {
+            return url;
+        }
+        return url.startsWith("/") ? baseUrl + url : baseUrl + "/" + url;
+    }
+}
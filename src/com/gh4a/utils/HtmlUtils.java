@@ -49,7 +49,6 @@ import android.text.style.UnderlineSpan;
 
 import com.gh4a.R;
 
-import org.ccil.cowan.tagsoup.HTMLSchema;
 import org.ccil.cowan.tagsoup.Parser;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -58,6 +57,8 @@ import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.regex.Matcher;
@@ -137,35 +138,12 @@ public class HtmlUtils {
     }
 
     /**
-     * Rewrite relative URLs in HTML fetched e.g. from markdown files.
-     *
-     * @param html
-     * @param repoUser
-     * @param repoName
-     * @param branch
-     * @return
+     * Get the base URL relative URLs in HTML fetched e.g. from markdown files
+     * refer to, to be passed to {@link #encode(Context, String, String, ImageGetter)}.
      */
-    public static String rewriteRelativeUrls(final String html, final String repoUser,
+    public static String getRawBaseUrl(final String repoUser,
             final String repoName, final String branch) {
-        final String baseUrl = "https://raw.github.com/" + repoUser + "/" + repoName + "/" + branch;
-        final StringBuffer sb = new StringBuffer();
-        final Pattern p = Pattern.compile("(href|src)=\"(\\S+)\"");
-        final Matcher m = p.matcher(html);
-
-        while (m.find()) {
-            String url = m.group(2);
-            if (!url.contains("://") && !url.startsWith("#")) {
-                if (url.startsWith("/")) {
-                    url = baseUrl + url;
-                } else {
-                    url = baseUrl + "/" + url;
-                }
-            }
-            m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + "=\"" + url + "\""));
-        }
-        m.appendTail(sb);
-
-        return sb.toString();
+        return "https://raw.github.com/" + repoUser + "/" + repoName + "/" + branch;
     }
 
     /**
@@ -177,39 +155,235 @@ public class HtmlUtils {
      */
     public static CharSequence encode(final Context context, final String html,
                                       final ImageGetter imageGetter) {
+        return encode(context, html, null, imageGetter);
+    }
+
+    /**
+     * Encode HTML, resolving relative link and image URLs against a base URL
+     *
+     * @param html
+     * @param baseUrl base URL for relative URLs, or null to leave them alone
+     * @param imageGetter
+     * @return html
+     */
+    public static CharSequence encode(final Context context, final String html,
+                                      final String baseUrl, final ImageGetter imageGetter) {
         if (TextUtils.isEmpty(html))
             return "";
 
-        return Html.fromHtml(context, html, imageGetter);
+        return Html.fromHtml(context, html, baseUrl, imageGetter);
+    }
+
+    // Span types of the serialized format, append only
+    private static final int SPAN_REPLY = 0;
+    private static final int SPAN_CODE_BLOCK = 1;
+    private static final int SPAN_HORIZONTAL_LINE = 2;
+    private static final int SPAN_STYLE = 3;
+    private static final int SPAN_RELATIVE_SIZE = 4;
+    private static final int SPAN_TYPEFACE = 5;
+    private static final int SPAN_UNDERLINE = 6;
+    private static final int SPAN_STRIKETHROUGH = 7;
+    private static final int SPAN_SUPERSCRIPT = 8;
+    private static final int SPAN_SUBSCRIPT = 9;
+    private static final int SPAN_BACKGROUND_COLOR = 10;
+    private static final int SPAN_FOREGROUND_COLOR = 11;
+    private static final int SPAN_BULLET = 12;
+    private static final int SPAN_ALIGNMENT = 13;
+    private static final int SPAN_URL = 14;
+    private static final int SPAN_IMAGE = 15;
+
+    /**
+     * Writes text created by {@link #encode} in a compact binary form, to be
+     * read back by {@link #readEncoded}. Image spans are written as their
+     * source only.
+     *
+     * @throws IOException if writing failed or the text contains spans
+     *         that can't be serialized
+     */
+    public static void writeEncoded(DataOutputStream out, CharSequence text) throws IOException {
+        // not writeUTF(), as that's limited to 64k
+        byte[] chars = text.toString().getBytes("UTF-8");
+        out.writeInt(chars.length);
+        out.write(chars);
+        if (!(text instanceof Spanned)) {
+            out.writeInt(0);
+            return;
+        }
+
+        Spanned spanned = (Spanned) text;
+        Object[] spans = spanned.getSpans(0, spanned.length(), Object.class);
+        out.writeInt(spans.length);
+        // getSpans() returns the spans in insertion order, which matters for
+        // the drawing order of leading margins
+        for (Object span : spans) {
+            writeSpan(out, span);
+            out.writeInt(spanned.getSpanStart(span));
+            out.writeInt(spanned.getSpanEnd(span));
+            out.writeInt(spanned.getSpanFlags(span));
+        }
+    }
+
+    private static void writeSpan(DataOutputStream out, Object span) throws IOException {
+        // check for exact classes, as subclasses may have state we don't know about
+        Class<?> clazz = span.getClass();
+        if (clazz == ReplySpan.class) {
+            ReplySpan reply = (ReplySpan) span;
+            out.writeByte(SPAN_REPLY);
+            out.writeInt(reply.mMargin);
+            out.writeInt(reply.mSize);
+            out.writeInt(reply.mColor);
+        } else if (clazz == CodeBlockSpan.class) {
+            out.writeByte(SPAN_CODE_BLOCK);
+            out.writeInt(((CodeBlockSpan) span).mColor);
+        } else if (clazz == HorizontalLineSpan.class) {
+            HorizontalLineSpan line = (HorizontalLineSpan) span;
+            out.writeByte(SPAN_HORIZONTAL_LINE);
+            out.writeFloat(line.mHeight);
+            out.writeInt(line.mColor);
+        } else if (clazz == StyleSpan.class) {
+            out.writeByte(SPAN_STYLE);
+            out.writeInt(((StyleSpan) span).getStyle());
+        } else if (clazz == RelativeSizeSpan.class) {
+            out.writeByte(SPAN_RELATIVE_SIZE);
+            out.writeFloat(((RelativeSizeSpan) span).getSizeChange());
+        } else if (clazz == TypefaceSpan.class) {
+            out.writeByte(SPAN_TYPEFACE);
+            out.writeUTF(((TypefaceSpan) span).getFamily());
+        } else if (clazz == UnderlineSpan.class) {
+            out.writeByte(SPAN_UNDERLINE);
+        } else if (clazz == StrikethroughSpan.class) {
+            out.writeByte(SPAN_STRIKETHROUGH);
+        } else if (clazz == SuperscriptSpan.class) {
+            out.writeByte(SPAN_SUPERSCRIPT);
+        } else if (clazz == SubscriptSpan.class) {
+            out.writeByte(SPAN_SUBSCRIPT);
+        } else if (clazz == BackgroundColorSpan.class) {
+            out.writeByte(SPAN_BACKGROUND_COLOR);
+            out.writeInt(((BackgroundColorSpan) span).getBackgroundColor());
+        } else if (clazz == ForegroundColorSpan.class) {
+            out.writeByte(SPAN_FOREGROUND_COLOR);
+            out.writeInt(((ForegroundColorSpan) span).getForegroundColor());
+        } else if (clazz == BulletSpan.class) {
+            // the gap width isn't accessible, but it's a resource anyway
+            out.writeByte(SPAN_BULLET);
+        } else if (clazz == AlignmentSpan.Standard.class) {
+            out.writeByte(SPAN_ALIGNMENT);
+            out.writeUTF(((AlignmentSpan.Standard) span).getAlignment().name());
+        } else if (clazz == URLSpan.class) {
+            out.writeByte(SPAN_URL);
+            out.writeUTF(((URLSpan) span).getURL());
+        } else if (clazz == ImageSpan.class) {
+            String source = ((ImageSpan) span).getSource();
+            out.writeByte(SPAN_IMAGE);
+            out.writeBoolean(source != null);
+            if (source != null) {
+                out.writeUTF(source);
+            }
+        } else {
+            throw new IOException("Can't serialize span of type " + clazz);
+        }
+    }
+
+    /**
+     * Reads text written by {@link #writeEncoded}.
+     *
+     * @param imageGetter provides the drawables of the image spans
+     */
+    public static CharSequence readEncoded(DataInputStream in, Resources res,
+            ImageGetter imageGetter) throws IOException {
+        byte[] chars = new byte[in.readInt()];
+        in.readFully(chars);
+        SpannableStringBuilder text = new SpannableStringBuilder(new String(chars, "UTF-8"));
+        int count = in.readInt();
+        int bulletMargin = res.getDimensionPixelSize(R.dimen.bullet_span_margin);
+
+        for (int i = 0; i < count; i++) {
+            final Object span;
+            int type = in.readByte();
+            switch (type) {
+                case SPAN_REPLY:
+                    span = new ReplySpan(in.readInt(), in.readInt(), in.readInt());
+                    break;
+                case SPAN_CODE_BLOCK:
+                    span = new CodeBlockSpan(in.readInt());
+                    break;
+                case SPAN_HORIZONTAL_LINE:
+                    span = new HorizontalLineSpan(in.readFloat(), in.readInt());
+                    break;
+                case SPAN_STYLE:
+                    span = new StyleSpan(in.readInt());
+                    break;
+                case SPAN_RELATIVE_SIZE:
+                    span = new RelativeSizeSpan(in.readFloat());
+                    break;
+                case SPAN_TYPEFACE:
+                    span = new TypefaceSpan(in.readUTF());
+                    break;
+                case SPAN_UNDERLINE:
+                    span = new UnderlineSpan();
+                    break;
+                case SPAN_STRIKETHROUGH:
+                    span = new StrikethroughSpan();
+                    break;
+                case SPAN_SUPERSCRIPT:
+                    span = new SuperscriptSpan();
+                    break;
+                case SPAN_SUBSCRIPT:
+                    span = new SubscriptSpan();
+                    break;
+                case SPAN_BACKGROUND_COLOR:
+                    span = new BackgroundColorSpan(in.readInt());
+                    break;
+                case SPAN_FOREGROUND_COLOR:
+                    span = new ForegroundColorSpan(in.readInt());
+                    break;
+                case SPAN_BULLET:
+                    span = new BulletSpan(bulletMargin);
+                    break;
+                case SPAN_ALIGNMENT:
+                    try {
+                        span = new AlignmentSpan.Standard(Layout.Alignment.valueOf(in.readUTF()));
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Invalid alignment", e);
+                    }
+                    break;
+                case SPAN_URL:
+                    span = new URLSpan(in.readUTF());
+                    break;
+                case SPAN_IMAGE: {
+                    String source = in.readBoolean() ? in.readUTF() : null;
+                    span = new ImageSpan(imageGetter.getDrawable(source), source);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown span type " + type);
+            }
+
+            int start = in.readInt();
+            int end = in.readInt();
+            int flags = in.readInt();
+            if (start < 0 || end < start || end > text.length()) {
+                throw new IOException("Invalid span range");
+            }
+            text.setSpan(span, start, end, flags);
+        }
+        return text;
     }
 
     /* a copy of the framework's HTML class, stripped down and extended for our use cases */
     private static class Html {
         private Html() { }
 
-        /**
-         * Lazy initialization holder for HTML parser.
-         */
-        private static class HtmlParser {
-            private static final HTMLSchema schema = new HTMLSchema();
-        }
-
-        public static Spanned fromHtml(Context context,
-                String source, android.text.Html.ImageGetter imageGetter) {
-            Parser parser = new Parser();
+        public static Spanned fromHtml(Context context, String source, String baseUrl,
+                android.text.Html.ImageGetter imageGetter) {
+            Parser parser = HtmlParsers.take();
             try {
-                parser.setProperty(Parser.schemaProperty, HtmlParser.schema);
-            } catch (org.xml.sax.SAXNotRecognizedException e) {
-                // Should not happen.
-                throw new RuntimeException(e);
-            } catch (org.xml.sax.SAXNotSupportedException e) {
-                // Should not happen.
-                throw new RuntimeException(e);
+                HtmlToSpannedConverter converter = new HtmlToSpannedConverter(
+                        context.getResources(), source, baseUrl, imageGetter, parser);
+                return converter.convert();
+            } finally {
+                HtmlParsers.release(parser);
             }
-
-            HtmlToSpannedConverter converter =
-                    new HtmlToSpannedConverter(context.getResources(), source, imageGetter, parser);
-            return converter.convert();
         }
     }
 
@@ -224,6 +398,7 @@ public class HtmlUtils {
         private int mReplyMarkerSize;
 
         private String mSource;
+        private String mBaseUrl;
         private XMLReader mReader;
         private SpannableStringBuilder mSpannableStringBuilder;
         private android.text.Html.ImageGetter mImageGetter;
@@ -264,7 +439,7 @@ public class HtmlUtils {
             return sTextDecorationPattern;
         }
 
-        public HtmlToSpannedConverter(Resources res, String source,
+        public HtmlToSpannedConverter(Resources res, String source, String baseUrl,
                 android.text.Html.ImageGetter imageGetter, Parser parser) {
             mDividerHeight = res.getDimension(R.dimen.divider_span_height);
             mBulletMargin = res.getDimensionPixelSize(R.dimen.bullet_span_margin);
@@ -272,6 +447,7 @@ public class HtmlUtils {
             mReplyMarkerSize = res.getDimensionPixelSize(R.dimen.reply_span_size);
 
             mSource = source;
+            mBaseUrl = baseUrl;
             mSpannableStringBuilder = new SpannableStringBuilder();
             mImageGetter = imageGetter;
             mReader = parser;
@@ -401,7 +577,7 @@ public class HtmlUtils {
                     div.mHasPre = true;
                 }
             } else if (tag.equalsIgnoreCase("a")) {
-                startA(mSpannableStringBuilder, attributes);
+                startA(mSpannableStringBuilder, resolveUrl(attributes.getValue("", "href")));
             } else if (tag.equalsIgnoreCase("u")) {
                 start(mSpannableStringBuilder, new Underline());
             } else if (tag.equalsIgnoreCase("del")) {
@@ -425,7 +601,8 @@ public class HtmlUtils {
                     tag.charAt(1) >= '1' && tag.charAt(1) <= '6') {
                 startHeading(mSpannableStringBuilder, attributes, tag.charAt(1) - '1');
             } else if (tag.equalsIgnoreCase("img")) {
-                startImg(mSpannableStringBuilder, attributes, mImageGetter);
+                startImg(mSpannableStringBuilder,
+                        resolveUrl(attributes.getValue("", "src")), mImageGetter);
             }
         }
 
@@ -703,9 +880,12 @@ public class HtmlUtils {
             }
         }
 
-        private static void startImg(Editable text, Attributes attributes,
+        private String resolveUrl(String url) {
+            return HtmlParsers.resolveUrl(mBaseUrl, url);
+        }
+
+        private static void startImg(Editable text, String src,
                 android.text.Html.ImageGetter img) {
-            String src = attributes.getValue("", "src");
             Drawable d = img.getDrawable(src);
 
             int len = text.length();
@@ -744,8 +924,7 @@ public class HtmlUtils {
             }
         }
 
-        private static void startA(Editable text, Attributes attributes) {
-            String href = attributes.getValue("", "href");
+        private static void startA(Editable text, String href) {
             start(text, new Href(href));
         }
 
@@ -22,19 +22,25 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.os.AsyncTaskCompat;
 import android.text.Html.ImageGetter;
+import android.text.Layout;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
 import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.ImageSpan;
 import android.util.DisplayMetrics;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.TextView;
 
@@ -45,17 +51,24 @@ import com.gh4a.fragment.SettingsFragment;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import pl.droidsonroids.gif.GifDrawable;
 
@@ -77,25 +90,26 @@ public class HttpImageGetter implements ImageGetter {
     }
 
     private static class GifCallback implements Drawable.Callback {
-        private final List<WeakReference<TextView>> mViewRefs;
+        private final ObjectInfo mInfo;
         private final Handler mHandler = new Handler();
 
-        public GifCallback(List<WeakReference<TextView>> viewRefs) {
-            mViewRefs = viewRefs;
+        public GifCallback(ObjectInfo info) {
+            mInfo = info;
         }
 
         @Override
         public void invalidateDrawable(@NonNull Drawable drawable) {
-            for (WeakReference<TextView> ref : mViewRefs) {
+            boolean visible = false;
+            for (WeakReference<TextView> ref : mInfo.mViewRefs) {
                 TextView view = ref.get();
-                if (view != null) {
-                    view.invalidate();
-                    // make sure the TextView's display list is regenerated
-                    boolean enabled = view.isEnabled();
-                    view.setEnabled(!enabled);
-                    view.setEnabled(enabled);
+                if (view != null && invalidateSpan(view, drawable, mInfo.mGetter.mTempRect)) {
+                    visible = true;
                 }
             }
+            if (!visible) {
+                // scrolled out of view, stop decoding frames nobody sees
+                mInfo.mGetter.scheduleGifUpdate();
+            }
         }
 
         @Override
@@ -114,8 +128,8 @@ public class HttpImageGetter implements ImageGetter {
         final WeakReference<GifDrawable> mDrawable;
         final GifCallback mCallback;
 
-        public GifInfo(GifDrawable d, List<WeakReference<TextView>> viewRefs) {
-            mCallback = new GifCallback(viewRefs);
+        public GifInfo(GifDrawable d, ObjectInfo info) {
+            mCallback = new GifCallback(info);
             mDrawable = new WeakReference<>(d);
             d.setCallback(mCallback);
         }
@@ -129,25 +143,32 @@ public class HttpImageGetter implements ImageGetter {
         }
     }
 
-    // interface just used for tracking purposes
-    private static class LoadedBitmapDrawable extends BitmapDrawable {
-        public LoadedBitmapDrawable(Resources res, Bitmap bitmap) {
-            super(res, bitmap);
-        }
-    }
-
-    private static class ObjectInfo {
+    private static class ObjectInfo implements Runnable, View.OnAttachStateChangeListener {
+        private final HttpImageGetter mGetter;
         private final ArrayList<WeakReference<TextView>> mViewRefs = new ArrayList<>();
         private final List<GifInfo> mGifs = new ArrayList<>();
-        private final List<WeakReference<Bitmap>> mBitmaps = new ArrayList<>();
 
+        // encoded with placeholders, which are replaced in place as the images arrive
         private CharSequence mRawHtml;
         private CharSequence mEncodedHtml;
-        private ImageGetterAsyncTask mTask;
+        private List<ImageLoadTask> mTasks;
+        private boolean mApplyPending;
         private boolean mResumed = true;
+        // width the images are decoded for
+        private int mImageWidth;
+        // memory used by the loaded images
+        private long mImageBytes;
+        private long mLastBound;
+        // set once the info was dropped from the getter
+        private boolean mReleased;
+
+        ObjectInfo(HttpImageGetter getter) {
+            mGetter = getter;
+        }
 
-        void bind(TextView view, String html, HttpImageGetter getter) {
+        void bind(TextView view, String html, String baseUrl, Object id) {
             addView(view);
+            mLastBound = ++mGetter.mBindCount;
 
             if (mEncodedHtml != null) {
                 apply(mEncodedHtml);
@@ -155,8 +176,7 @@ public class HttpImageGetter implements ImageGetter {
             }
 
             if (mRawHtml == null) {
-                CharSequence encoded = HtmlUtils.encode(view.getContext(),
-                        html, getter.mLoadingGetter);
+                CharSequence encoded = getEncodedHtml(view.getContext(), html, baseUrl, id);
                 if (containsImages(html)) {
                     mRawHtml = encoded;
                 } else {
@@ -167,19 +187,17 @@ public class HttpImageGetter implements ImageGetter {
                 }
             }
 
-            apply(mRawHtml);
-            if (mTask == null) {
-                mTask = new ImageGetterAsyncTask(getter, html, this);
-                AsyncTaskCompat.executeParallel(mTask);
+            if (mTasks == null) {
+                startImageLoads();
             }
-
+            apply(mEncodedHtml != null ? mEncodedHtml : mRawHtml);
         }
         void unbind(TextView view) {
             removeView(view);
         }
 
-        void encode(Context context, String html, ImageGetter loadingGetter) {
-            CharSequence encoded = HtmlUtils.encode(context, html, loadingGetter);
+        void encode(Context context, String html, String baseUrl, ImageGetter loadingGetter) {
+            CharSequence encoded = HtmlUtils.encode(context, html, baseUrl, loadingGetter);
             synchronized (this) {
                 if (containsImages(html)) {
                     mRawHtml = encoded;
@@ -190,65 +208,235 @@ public class HttpImageGetter implements ImageGetter {
             }
         }
 
-        void onEncodingDone(CharSequence encoded) {
-            mRawHtml = null;
-            mEncodedHtml = encoded;
+        /**
+         * Uses the prerendered text if there is one, as encoding long bodies
+         * on the main thread takes long enough to drop frames.
+         */
+        private CharSequence getEncodedHtml(Context context, String html,
+                String baseUrl, Object id) {
+            // prerendered text never had its URLs resolved
+            CharSequence prerendered = baseUrl == null ? RenderedHtmlCache.get(id, html) : null;
+            if (prerendered == null) {
+                return HtmlUtils.encode(context, html, baseUrl, mGetter.mLoadingGetter);
+            }
+            if (!containsImages(html)) {
+                return prerendered;
+            }
+            // the prerendered text may be bound by other getters as well,
+            // so put our own placeholders into a copy of it
+            SpannableStringBuilder text = new SpannableStringBuilder(prerendered);
+            Drawable placeholder = mGetter.mLoadingGetter.mImage;
+            for (ImageSpan span : text.getSpans(0, text.length(), ImageSpan.class)) {
+                replaceSpan(text, span, new ImageSpan(placeholder, span.getSource()));
+            }
+            return text;
+        }
 
+        private void startImageLoads() {
+            if (!(mRawHtml instanceof Spannable)) {
+                mRawHtml = new SpannableString(mRawHtml);
+            }
             discardLoadedImages();
+            mImageBytes = 0;
+            mImageWidth = mGetter.mContentWidth;
 
-            Spanned spanned = (Spanned) encoded;
-            ImageSpan[] spans = spanned.getSpans(0, encoded.length(), ImageSpan.class);
+            Spannable text = (Spannable) mRawHtml;
+            ImageSpan[] spans = text.getSpans(0, text.length(), ImageSpan.class);
+            Set<String> sources = new HashSet<>();
+            mTasks = new ArrayList<>();
             for (ImageSpan span : spans) {
-                Drawable d = span.getDrawable();
-                if (d instanceof GifDrawable) {
-                    GifDrawable gd = (GifDrawable) d;
-                    if (mResumed) {
-                        gd.start();
-                    }
-                    mGifs.add(new GifInfo(gd, mViewRefs));
-                } else if (d instanceof LoadedBitmapDrawable) {
-                    BitmapDrawable bd = (BitmapDrawable) d;
-                    mBitmaps.add(new WeakReference<>(bd.getBitmap()));
+                String source = span.getSource();
+                if (!sources.add(source)) {
+                    // the same image is used multiple times, it's loaded only once
+                    continue;
                 }
+                Drawable cached = mGetter.getCachedDrawable(source, mImageWidth);
+                if (cached != null) {
+                    replaceImage(source, cached);
+                } else {
+                    ImageLoadTask task = new ImageLoadTask(mGetter, source, mImageWidth, this);
+                    mTasks.add(task);
+                    task.executeOnExecutor(sImageExecutor);
+                }
+            }
+            if (mTasks.isEmpty()) {
+                onAllImagesLoaded();
             }
-            apply(mEncodedHtml);
         }
 
-        void setResumed(boolean resumed) {
-            mResumed = resumed;
-            for (GifInfo info : mGifs) {
-                GifDrawable drawable = info.mDrawable.get();
-                if (drawable == null) {
-                    continue;
+        void onImageLoaded(ImageLoadTask task, Drawable drawable) {
+            if (mTasks == null || !mTasks.remove(task)) {
+                return;
+            }
+            replaceImage(task.mSource, drawable);
+            if (mTasks.isEmpty()) {
+                onAllImagesLoaded();
+            }
+            mGetter.trimImageMemory(this);
+            // images tend to arrive in bursts, so only relayout once for each burst
+            if (!mApplyPending) {
+                mApplyPending = true;
+                sHandler.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            mApplyPending = false;
+            apply(mEncodedHtml != null ? mEncodedHtml : mRawHtml);
+            if (!mGifs.isEmpty()) {
+                mGetter.scheduleGifUpdate();
+            }
+        }
+
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            if (mReleased) {
+                return;
+            }
+            if (mRawHtml != null && mTasks == null) {
+                // images were released while off screen, bring them back
+                startImageLoads();
+                apply(mEncodedHtml != null ? mEncodedHtml : mRawHtml);
+            }
+            mGetter.observeScrolling(v);
+            if (!mGifs.isEmpty()) {
+                mGetter.scheduleGifUpdate();
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+            if (!mGifs.isEmpty()) {
+                mGetter.scheduleGifUpdate();
+            }
+        }
+
+        boolean isShown() {
+            for (int i = 0; i < mViewRefs.size(); i++) {
+                TextView view = mViewRefs.get(i).get();
+                if (view != null && view.isShown()) {
+                    return true;
                 }
-                if (resumed) {
-                    drawable.start();
-                } else {
-                    drawable.stop();
+            }
+            return false;
+        }
+
+        /**
+         * Replaces all loaded images by placeholders, so that they are loaded
+         * again (from the cache in most cases) when a view becomes visible again.
+         */
+        void releaseImages() {
+            Spannable text = (Spannable) (mEncodedHtml != null ? mEncodedHtml : mRawHtml);
+            cancelImageLoads();
+            discardLoadedImages();
+
+            Drawable placeholder = mGetter.mLoadingGetter.mImage;
+            ImageSpan[] spans = text.getSpans(0, text.length(), ImageSpan.class);
+            for (ImageSpan span : spans) {
+                replaceSpan(text, span, new ImageSpan(placeholder, span.getSource()));
+            }
+            mRawHtml = text;
+            mEncodedHtml = null;
+            mImageBytes = 0;
+            // detached views still keep the old images alive otherwise
+            apply(mRawHtml);
+        }
+
+        private void onAllImagesLoaded() {
+            mEncodedHtml = mRawHtml;
+            mRawHtml = null;
+        }
+
+        private void replaceImage(String source, Drawable drawable) {
+            Spannable text = (Spannable) mRawHtml;
+            ImageSpan[] spans = text.getSpans(0, text.length(), ImageSpan.class);
+            for (ImageSpan span : spans) {
+                if (TextUtils.equals(source, span.getSource())) {
+                    replaceSpan(text, span, new ImageSpan(drawable, source));
                 }
             }
+
+            if (drawable instanceof GifDrawable) {
+                GifDrawable gd = (GifDrawable) drawable;
+                // only started once it's known to be visible
+                gd.stop();
+                mGifs.add(new GifInfo(gd, this));
+                mImageBytes += gd.getAllocationByteCount();
+            } else if (drawable instanceof BitmapDrawable && drawable != mGetter.mErrorDrawable) {
+                mImageBytes += ImageCache.getByteCount(((BitmapDrawable) drawable).getBitmap());
+            }
         }
 
-        private void discardLoadedImages() {
-            for (WeakReference<Bitmap> ref : mBitmaps) {
-                Bitmap bitmap = ref.get();
-                if (bitmap != null) {
-                    bitmap.recycle();
+        private static void replaceSpan(Spannable text, Object oldSpan, Object newSpan) {
+            int start = text.getSpanStart(oldSpan);
+            int end = text.getSpanEnd(oldSpan);
+            int flags = text.getSpanFlags(oldSpan);
+            text.removeSpan(oldSpan);
+            text.setSpan(newSpan, start, end, flags);
+        }
+
+        void setResumed(boolean resumed) {
+            mResumed = resumed;
+        }
+
+        boolean isSpanVisible(Drawable drawable, Rect rect) {
+            for (int i = 0; i < mViewRefs.size(); i++) {
+                TextView view = mViewRefs.get(i).get();
+                if (view != null && HttpImageGetter.isSpanVisible(view, drawable, rect)) {
+                    return true;
                 }
             }
-            mBitmaps.clear();
+            return false;
+        }
+
+        private void discardLoadedImages() {
+            // Bitmaps are owned by the shared image cache, so only GIFs are ours to free
             for (GifInfo info : mGifs) {
                 info.destroy();
             }
             mGifs.clear();
         }
 
-        void clearHtmlCache() {
-            if (mTask != null) {
-                mTask.cancel(true);
+        private void cancelImageLoads() {
+            if (mTasks != null) {
+                for (ImageLoadTask task : mTasks) {
+                    task.cancel(true);
+                }
+                mTasks = null;
+            }
+            if (mApplyPending) {
+                sHandler.removeCallbacks(this);
+                mApplyPending = false;
             }
+        }
+
+        boolean hasViews() {
+            for (int i = 0; i < mViewRefs.size(); i++) {
+                if (mViewRefs.get(i).get() != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Drops everything held for the object, for when the info is removed from the getter.
+         */
+        void release() {
+            cancelImageLoads();
+            discardLoadedImages();
             mRawHtml = null;
             mEncodedHtml = null;
+            mImageBytes = 0;
+            mReleased = true;
+        }
+
+        void clearHtmlCache() {
+            cancelImageLoads();
+            mRawHtml = null;
+            mEncodedHtml = null;
+            mImageBytes = 0;
         }
 
         private void apply(CharSequence text) {
@@ -274,6 +462,7 @@ public class HttpImageGetter implements ImageGetter {
             }
             if (!alreadyPresent) {
                 mViewRefs.add(new WeakReference<>(view));
+                view.addOnAttachStateChangeListener(this);
             }
         }
 
@@ -283,11 +472,37 @@ public class HttpImageGetter implements ImageGetter {
                 if (existing == null || existing == view) {
                     mViewRefs.remove(i);
                 }
+                if (existing == view) {
+                    view.removeOnAttachStateChangeListener(this);
+                }
             }
         }
 
     }
 
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    // Decoding GIF frames is expensive, so only so many of them are animated at a time
+    private static final int MAX_ANIMATING_GIFS = 3;
+    // Number of objects whose encoded text and images are kept at most, not
+    // counting the ones that are currently bound to a view
+    private static final int MAX_OBJECT_INFOS = 40;
+    // main thread only
+    private static final Rect sVisibleRect = new Rect();
+
+    // Images are fetched concurrently, but with a bounded number of connections;
+    // unlike AsyncTask's default pool, the queue is unbounded as long threads
+    // can contain lots of images
+    private static final ThreadPoolExecutor sImageExecutor = new ThreadPoolExecutor(
+            4, 4, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    static {
+        sImageExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static final int IMAGE_TYPE_BITMAP = 0;
+    private static final int IMAGE_TYPE_GIF = 1;
+    private static final int IMAGE_TYPE_SVG = 2;
+
     private static boolean containsImages(final String html) {
         return html.contains("<img");
     }
@@ -298,17 +513,39 @@ public class HttpImageGetter implements ImageGetter {
 
     private final Context mContext;
 
-    private final File mCacheDir;
-
     private final int mWidth;
     private final int mHeight;
+    // width available to images in the bound views, as far as it's known yet
+    private int mContentWidth;
+    // memory the loaded images of all objects may take at most, not counting
+    // the ones that are currently shown
+    private final long mMemoryBudget;
+    private long mBindCount;
+
+    // main thread only
+    private final Rect mTempRect = new Rect();
+    private boolean mGifUpdatePending;
+    private WeakReference<ViewTreeObserver> mObservedTree;
+    private final Runnable mGifUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mGifUpdatePending = false;
+            updateGifStates();
+        }
+    };
+    private final ViewTreeObserver.OnScrollChangedListener mScrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+        @Override
+        public void onScrollChanged() {
+            scheduleGifUpdate();
+        }
+    };
 
     private boolean mDestroyed;
     private boolean mResumed;
 
     public HttpImageGetter(Context context) {
         mContext = context;
-        mCacheDir = context.getCacheDir();
 
         WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         final Point size = new Point();
@@ -316,6 +553,8 @@ public class HttpImageGetter implements ImageGetter {
         wm.getDefaultDisplay().getSize(size);
         mWidth= size.x;
         mHeight = size.y;
+        mContentWidth = mWidth;
+        mMemoryBudget = Runtime.getRuntime().maxMemory() / 16;
 
         mLoadingGetter = new LoadingImageGetter(context);
         mErrorDrawable = ContextCompat.getDrawable(context,
@@ -329,6 +568,7 @@ public class HttpImageGetter implements ImageGetter {
         for (ObjectInfo info : mObjectInfos.values()) {
             info.setResumed(false);
         }
+        updateGifStates();
     }
 
     public void resume() {
@@ -336,6 +576,7 @@ public class HttpImageGetter implements ImageGetter {
         for (ObjectInfo info : mObjectInfos.values()) {
             info.setResumed(true);
         }
+        updateGifStates();
     }
 
     public void clearHtmlCache() {
@@ -346,125 +587,418 @@ public class HttpImageGetter implements ImageGetter {
 
     public void destroy() {
         for (ObjectInfo info : mObjectInfos.values()) {
-            info.discardLoadedImages();
+            info.release();
         }
         mObjectInfos.clear();
         mDestroyed = true;
+
+        sHandler.removeCallbacks(mGifUpdateRunnable);
+        ViewTreeObserver observer = mObservedTree != null ? mObservedTree.get() : null;
+        if (observer != null && observer.isAlive()) {
+            observer.removeOnScrollChangedListener(mScrollListener);
+        }
+        mObservedTree = null;
     }
 
     public void encode(final Context context, final Object id, final String html) {
-        findOrCreateInfo(id).encode(context, html, mLoadingGetter);
+        encode(context, id, html, null);
+    }
+
+    /**
+     * @param baseUrl base URL for relative link and image URLs in the HTML
+     */
+    public void encode(final Context context, final Object id,
+            final String html, final String baseUrl) {
+        findOrCreateInfo(id).encode(context, html, baseUrl, mLoadingGetter);
     }
 
     public void bind(final TextView view, final String html, final Object id) {
+        bind(view, html, null, id);
+    }
+
+    /**
+     * @param baseUrl base URL for relative link and image URLs in the HTML
+     */
+    public void bind(final TextView view, final String html,
+            final String baseUrl, final Object id) {
         for (ObjectInfo info : mObjectInfos.values()) {
             info.unbind(view);
         }
-        findOrCreateInfo(id).bind(view, html, this);
+        updateContentWidth(view);
+        ObjectInfo info = findOrCreateInfo(id);
+        info.bind(view, html, baseUrl, id);
+        if (mObjectInfos.size() > MAX_OBJECT_INFOS) {
+            trimObjectInfos(info);
+        }
+    }
+
+    /**
+     * Drops the infos of the least recently bound objects that aren't bound
+     * to any view anymore, e.g. because their list items were scrolled far
+     * away and their views were reused. They are rebuilt, with the images
+     * coming from the image cache, when the objects are bound again.
+     */
+    private void trimObjectInfos(ObjectInfo current) {
+        ArrayList<Map.Entry<Object, ObjectInfo>> candidates = new ArrayList<>();
+        for (Map.Entry<Object, ObjectInfo> entry : mObjectInfos.entrySet()) {
+            ObjectInfo info = entry.getValue();
+            // infos that weren't bound yet are about to be, after encode()
+            if (info != current && info.mLastBound > 0 && !info.hasViews()) {
+                candidates.add(entry);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Map.Entry<Object, ObjectInfo>>() {
+            @Override
+            public int compare(Map.Entry<Object, ObjectInfo> lhs,
+                    Map.Entry<Object, ObjectInfo> rhs) {
+                long lhsBound = lhs.getValue().mLastBound, rhsBound = rhs.getValue().mLastBound;
+                return lhsBound < rhsBound ? -1 : (lhsBound == rhsBound ? 0 : 1);
+            }
+        });
+
+        // trim a bit further than needed, so we don't need to do that on every bind
+        int excess = mObjectInfos.size() - MAX_OBJECT_INFOS * 3 / 4;
+        for (int i = 0; i < excess && i < candidates.size(); i++) {
+            Map.Entry<Object, ObjectInfo> entry = candidates.get(i);
+            entry.getValue().release();
+            mObjectInfos.remove(entry.getKey());
+        }
+    }
+
+    private void scheduleGifUpdate() {
+        if (!mGifUpdatePending && !mDestroyed) {
+            mGifUpdatePending = true;
+            sHandler.post(mGifUpdateRunnable);
+        }
+    }
+
+    /**
+     * Animates the visible GIFs, up to the limit, and stops all others.
+     */
+    private void updateGifStates() {
+        int animating = 0;
+        for (ObjectInfo info : mObjectInfos.values()) {
+            for (GifInfo gif : info.mGifs) {
+                GifDrawable drawable = gif.mDrawable.get();
+                if (drawable == null) {
+                    continue;
+                }
+                boolean animate = info.mResumed && animating < MAX_ANIMATING_GIFS
+                        && info.isSpanVisible(drawable, mTempRect);
+                if (animate) {
+                    animating++;
+                    if (!drawable.isRunning()) {
+                        drawable.start();
+                    }
+                } else if (drawable.isRunning()) {
+                    drawable.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes sure scrolling the window of the given attached view updates the
+     * GIF states, as views scrolled out of sight aren't necessarily detached.
+     */
+    private void observeScrolling(View view) {
+        ViewTreeObserver observer = view.getViewTreeObserver();
+        ViewTreeObserver observed = mObservedTree != null ? mObservedTree.get() : null;
+        if (observer == observed) {
+            return;
+        }
+        if (observed != null && observed.isAlive()) {
+            observed.removeOnScrollChangedListener(mScrollListener);
+        }
+        observer.addOnScrollChangedListener(mScrollListener);
+        mObservedTree = new WeakReference<>(observer);
+    }
+
+    /**
+     * Determines where the span displaying the drawable is drawn in the view.
+     *
+     * @return the span's bounds in view coordinates, or null if the view doesn't
+     *         contain the span or isn't laid out yet
+     */
+    private static Rect getSpanBounds(TextView view, Drawable drawable, Rect outRect) {
+        CharSequence text = view.getText();
+        Layout layout = view.getLayout();
+        if (!(text instanceof Spanned) || !isLaidOut(view)) {
+            return null;
+        }
+        Spanned spanned = (Spanned) text;
+        ImageSpan[] spans = spanned.getSpans(0, spanned.length(), ImageSpan.class);
+        for (ImageSpan span : spans) {
+            if (span.getDrawable() != drawable) {
+                continue;
+            }
+            int start = spanned.getSpanStart(span);
+            int line = layout.getLineForOffset(start);
+            int left = (int) layout.getPrimaryHorizontal(start) + view.getTotalPaddingLeft();
+            int top = view.getTotalPaddingTop();
+            outRect.set(left, top + layout.getLineTop(line),
+                    left + drawable.getBounds().width(), top + layout.getLineBottom(line));
+            return outRect;
+        }
+        return null;
+    }
+
+    private static boolean isSpanVisible(TextView view, Drawable drawable, Rect rect) {
+        if (!view.isShown()) {
+            return false;
+        }
+        if (getSpanBounds(view, drawable, rect) == null) {
+            // Assume it's visible if we can't tell yet, the next frame will tell
+            return !isLaidOut(view);
+        }
+        return view.getLocalVisibleRect(sVisibleRect) && Rect.intersects(sVisibleRect, rect);
+    }
+
+    private static boolean isLaidOut(TextView view) {
+        return view.getLayout() != null && !view.isLayoutRequested();
+    }
+
+    /**
+     * Redraws the part of the view showing the drawable, if visible.
+     *
+     * @return whether the drawable is visible in the view
+     */
+    private static boolean invalidateSpan(TextView view, Drawable drawable, Rect rect) {
+        if (!isSpanVisible(view, drawable, rect)) {
+            return false;
+        }
+        CharSequence text = view.getText();
+        if (!isLaidOut(view)) {
+            view.invalidate();
+        } else if (text instanceof Spannable) {
+            // Text views with selectable text cache the rendered text in
+            // blocks, which are only redrawn on changes to their spans
+            Spannable spannable = (Spannable) text;
+            for (ImageSpan span : spannable.getSpans(0, spannable.length(), ImageSpan.class)) {
+                if (span.getDrawable() == drawable) {
+                    spannable.setSpan(span, spannable.getSpanStart(span),
+                            spannable.getSpanEnd(span), spannable.getSpanFlags(span));
+                }
+            }
+        } else {
+            // rect was filled by isSpanVisible()
+            view.invalidate(rect.left - view.getScrollX(), rect.top - view.getScrollY(),
+                    rect.right - view.getScrollX(), rect.bottom - view.getScrollY());
+        }
+        return true;
+    }
+
+    private void updateContentWidth(TextView view) {
+        int padding = view.getTotalPaddingLeft() + view.getTotalPaddingRight();
+        if (view.getWidth() > padding) {
+            mContentWidth = view.getWidth() - padding;
+        } else if (mContentWidth == mWidth && mWidth > padding) {
+            // not laid out yet, but the padding is known already
+            mContentWidth = mWidth - padding;
+        }
+    }
+
+    /**
+     * Releases the images of objects that aren't shown, least recently bound
+     * first, until the images of all objects fit into the memory budget again.
+     */
+    private void trimImageMemory(ObjectInfo current) {
+        long total = 0;
+        ArrayList<ObjectInfo> candidates = new ArrayList<>();
+        for (ObjectInfo info : mObjectInfos.values()) {
+            total += info.mImageBytes;
+            if (info != current && info.mImageBytes > 0 && !info.isShown()) {
+                candidates.add(info);
+            }
+        }
+        if (total <= mMemoryBudget) {
+            return;
+        }
+
+        Collections.sort(candidates, new Comparator<ObjectInfo>() {
+            @Override
+            public int compare(ObjectInfo lhs, ObjectInfo rhs) {
+                return lhs.mLastBound < rhs.mLastBound ? -1
+                        : (lhs.mLastBound == rhs.mLastBound ? 0 : 1);
+            }
+        });
+        for (ObjectInfo info : candidates) {
+            if (total <= mMemoryBudget) {
+                break;
+            }
+            total -= info.mImageBytes;
+            info.releaseImages();
+        }
     }
 
     private ObjectInfo findOrCreateInfo(Object id) {
         ObjectInfo info = mObjectInfos.get(id);
         if (info == null) {
-            info = new ObjectInfo();
+            info = new ObjectInfo(this);
             mObjectInfos.put(id, info);
         }
         return info;
     }
 
-    private static class ImageGetterAsyncTask extends AsyncTask<Void, Void, CharSequence> {
-        private HttpImageGetter mImageGetter;
-        private final String mHtml;
+    private static class ImageLoadTask extends AsyncTask<Void, Void, Drawable> {
+        private final HttpImageGetter mImageGetter;
+        private final String mSource;
+        private final int mWidth;
         private final ObjectInfo mInfo;
 
-        public ImageGetterAsyncTask(HttpImageGetter getter, String html, ObjectInfo info) {
+        public ImageLoadTask(HttpImageGetter getter, String source, int width, ObjectInfo info) {
             mImageGetter = getter;
-            mHtml = html;
+            mSource = source;
+            mWidth = width;
             mInfo = info;
         }
 
         @Override
-        protected CharSequence doInBackground(Void... params) {
-            return HtmlUtils.encode(mImageGetter.mContext, mHtml, mImageGetter);
+        protected Drawable doInBackground(Void... params) {
+            return mImageGetter.loadDrawable(mSource, mWidth);
         }
 
-        protected void onPostExecute(CharSequence result) {
-            if (!isCancelled()) {
-                mInfo.onEncodingDone(result);
+        @Override
+        protected void onPostExecute(Drawable result) {
+            mInfo.onImageLoaded(this, result);
+        }
+
+        @Override
+        protected void onCancelled(Drawable result) {
+            if (result instanceof GifDrawable) {
+                ((GifDrawable) result).recycle();
             }
         }
     }
 
+    /**
+     * @return the drawable for an image that is in the memory cache, or null
+     */
+    private Drawable getCachedDrawable(String source, int width) {
+        Bitmap bitmap = ImageCache.get(mContext).getBitmap(source, width);
+        return bitmap != null ? createBitmapDrawable(bitmap) : null;
+    }
+
+    private Drawable createBitmapDrawable(Bitmap bitmap) {
+        BitmapDrawable drawable = new BitmapDrawable(mContext.getResources(), bitmap);
+        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return drawable;
+    }
+
     @Override
     public Drawable getDrawable(String source) {
-        Bitmap bitmap = null;
-
-        if (!mDestroyed) {
-            File output = null;
-            InputStream is = null;
-            HttpURLConnection connection = null;
-            try {
-                connection = (HttpURLConnection) new URL(source).openConnection();
-                is = connection.getInputStream();
-                if (is != null) {
-                    String mime = connection.getContentType();
-                    if (mime == null) {
-                        mime = URLConnection.guessContentTypeFromName(source);
-                    }
-                    if (mime == null) {
-                        mime = URLConnection.guessContentTypeFromStream(is);
-                    }
-                    if (mime != null && mime.startsWith("image/svg")) {
-                        bitmap = renderSvgToBitmap(mContext.getResources(), is, mWidth, mHeight);
-                    } else {
-                        boolean isGif = mime != null && mime.startsWith("image/gif");
-                        if (!isGif || canLoadGif()) {
-                            output = File.createTempFile("image", ".tmp", mCacheDir);
-                            if (FileUtils.save(output, is)) {
-                                if (isGif) {
-                                    GifDrawable d = new GifDrawable(output);
-                                    d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
-                                    return d;
-                                } else {
-                                    bitmap = getBitmap(output, mWidth, mHeight);
-                                }
-                            }
+        return loadDrawable(source, mContentWidth);
+    }
+
+    /**
+     * Loads an image, scaled down to fit the given width. Must not be called
+     * on the main thread.
+     */
+    private Drawable loadDrawable(String source, int width) {
+        if (mDestroyed || TextUtils.isEmpty(source)) {
+            return mErrorDrawable;
+        }
+
+        ImageCache cache = ImageCache.get(mContext);
+        Bitmap bitmap = cache.getBitmap(source, width);
+        if (bitmap == null) {
+            File file = cache.getFile(source);
+            if (file == null) {
+                file = download(source);
+            }
+            if (file != null) {
+                try {
+                    int type = getImageType(file);
+                    if (type == IMAGE_TYPE_GIF) {
+                        if (canLoadGif()) {
+                            GifDrawable d = new GifDrawable(file);
+                            d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+                            return d;
                         }
+                    } else if (type == IMAGE_TYPE_SVG) {
+                        bitmap = renderSvgToBitmap(mContext.getResources(), file, width, mHeight);
+                    } else {
+                        bitmap = getBitmap(mContext.getResources(), file, width, mHeight);
                     }
+                } catch (IOException e) {
+                    // fall through to showing the error bitmap
                 }
-            } catch (IOException e) {
-                // fall through to showing the error bitmap
-            } finally {
-                if (output != null) {
-                    output.delete();
-                }
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (IOException e) {
-                        // ignored
-                    }
-                }
-                if (connection != null) {
-                    connection.disconnect();
+                if (bitmap != null) {
+                    cache.putBitmap(source, width, bitmap);
                 }
             }
         }
 
-        synchronized (this) {
-            if (mDestroyed && bitmap != null) {
-                bitmap.recycle();
-                bitmap = null;
+        return bitmap != null ? createBitmapDrawable(bitmap) : mErrorDrawable;
+    }
+
+    /**
+     * Downloads the image into the shared image cache.
+     *
+     * @return the downloaded file, or null if the image couldn't or shouldn't be downloaded
+     */
+    private File download(String source) {
+        HttpURLConnection connection = null;
+        try {
+            connection = HttpUtils.openConnection(source);
+            InputStream is = connection.getInputStream();
+            if (is == null) {
+                return null;
+            }
+            String mime = connection.getContentType();
+            if (mime == null) {
+                mime = URLConnection.guessContentTypeFromName(source);
+            }
+            if (mime != null && mime.startsWith("image/gif") && !canLoadGif()) {
+                is.close();
+                return null;
+            }
+            return ImageCache.get(mContext).putFile(source, is);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
             }
         }
+    }
 
-        if (bitmap == null) {
-            return mErrorDrawable;
+    /**
+     * Determines the type of a downloaded image from its contents, as the
+     * content type of the response isn't available for cached files.
+     */
+    private static int getImageType(File file) throws IOException {
+        byte[] header = new byte[64];
+        int length = 0;
+        InputStream is = new FileInputStream(file);
+        try {
+            int read;
+            while (length < header.length
+                    && (read = is.read(header, length, header.length - length)) > 0) {
+                length += read;
+            }
+        } finally {
+            is.close();
         }
 
-        BitmapDrawable drawable = new LoadedBitmapDrawable(mContext.getResources(), bitmap);
-        drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-        return drawable;
+        if (length >= 4 && header[0] == 'G' && header[1] == 'I'
+                && header[2] == 'F' && header[3] == '8') {
+            return IMAGE_TYPE_GIF;
+        }
+        // Bitmap formats have binary signatures, so markup can only be SVG
+        int pos = 0;
+        if (length >= 3 && (header[0] & 0xff) == 0xef
+                && (header[1] & 0xff) == 0xbb && (header[2] & 0xff) == 0xbf) {
+            // UTF-8 BOM
+            pos = 3;
+        }
+        while (pos < length && Character.isWhitespace(header[pos])) {
+            pos++;
+        }
+        if (pos < length && header[pos] == '<') {
+            return IMAGE_TYPE_SVG;
+        }
+        return IMAGE_TYPE_BITMAP;
     }
 
     private boolean canLoadGif() {
@@ -481,7 +1015,7 @@ public class HttpImageGetter implements ImageGetter {
         }
     }
 
-    private static Bitmap getBitmap(final File image, int width, int height) {
+    private static Bitmap getBitmap(Resources res, final File image, int width, int height) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         String imagePath = image.getAbsolutePath();
         RandomAccessFile file = null;
@@ -493,18 +1027,34 @@ public class HttpImageGetter implements ImageGetter {
             options.inJustDecodeBounds = true;
             BitmapFactory.decodeFileDescriptor(fd, null, options);
 
+            // Subsample as far as possible without getting narrower than the
+            // content width, then let the decoder scale down to that width
             int scale = 1;
-            while (options.outWidth >= width || options.outHeight >= height) {
+            while (options.outWidth / 2 >= width || options.outHeight >= height) {
                 options.outWidth /= 2;
                 options.outHeight /= 2;
                 scale *= 2;
             }
+            if (options.outWidth > width) {
+                options.inScaled = true;
+                options.inDensity = options.outWidth;
+                options.inTargetDensity = width;
+            }
 
             options.inJustDecodeBounds = false;
             options.inDither = false;
             options.inSampleSize = scale;
+            // JPEGs can't be transparent, so there's no need to decode them with alpha
+            if ("image/jpeg".equals(options.outMimeType)) {
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+            }
 
-            return BitmapFactory.decodeFileDescriptor(fd, null, options);
+            Bitmap bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+            if (bitmap != null) {
+                // the decoder took over our fake densities for scaling
+                bitmap.setDensity(res.getDisplayMetrics().densityDpi);
+            }
+            return bitmap;
         } catch (IOException e) {
             return null;
         } finally {
@@ -517,8 +1067,9 @@ public class HttpImageGetter implements ImageGetter {
         }
     }
 
-    private static Bitmap renderSvgToBitmap(Resources res, InputStream is,
-            int maxWidth, int maxHeight) {
+    private static Bitmap renderSvgToBitmap(Resources res, File file,
+            int maxWidth, int maxHeight) throws IOException {
+        InputStream is = new FileInputStream(file);
         try {
             SVG svg = SVG.getFromInputStream(is);
             if (svg != null) {
@@ -570,6 +1121,8 @@ public class HttpImageGetter implements ImageGetter {
         } catch (NullPointerException e) {
             // https://github.com/BigBadaboom/androidsvg/issues/81
             // remove me when there's a 1.2.3 release
+        } finally {
+            is.close();
         }
         return null;
     }
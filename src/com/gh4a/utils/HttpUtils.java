@@ -0,0 +1,22 @@
+package com.gh4a.utils;
+
+import org.eclipse.egit.github.core.okhttp.OkHttpProvider;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class HttpUtils {
+    /**
+     * Opens a connection through the OkHttp client that is also used by the
+     * GitHub API client, so all network paths share its connection pool
+     * (keep-alive and TLS session reuse) and transparent gzip handling.
+     */
+    public static HttpURLConnection openConnection(URL url) throws IOException {
+        return OkHttpProvider.getOkHttpClient().open(url);
+    }
+
+    public static HttpURLConnection openConnection(String url) throws IOException {
+        return openConnection(new URL(url));
+    }
+}
@@ -0,0 +1,206 @@
+package com.gh4a.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * App wide cache for images embedded into rendered HTML, shared by all
+ * {@link HttpImageGetter} instances. Decoded bitmaps are kept in memory,
+ * keyed by URL and the width they were decoded for; the downloaded files
+ * are kept on disk, keyed by URL only. Both tiers have a byte budget and
+ * evict the least recently used entries first.
+ *
+ * As bitmaps may be displayed by several screens at once, they must not
+ * be recycled by their users.
+ */
+public class ImageCache {
+    private static final String DIR_NAME = "images";
+    private static final String SUFFIX_TEMP = ".tmp";
+    private static final long MAX_DISK_SIZE = 20 * 1024 * 1024;
+
+    private static ImageCache sInstance;
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDirectory;
+    private long mDiskSize;
+    // file name -> size in bytes, in LRU order
+    private LinkedHashMap<String, Long> mDiskEntries;
+
+    public static synchronized ImageCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ImageCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIR_NAME);
+
+        // Use 1/8 of the available memory, in kB
+        final int limit = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        mMemoryCache = new LruCache<String, Bitmap>(limit) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return (int) (getByteCount(value) / 1024);
+            }
+        };
+    }
+
+    public static long getByteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    public Bitmap getBitmap(String url, int width) {
+        return mMemoryCache.get(makeMemoryKey(url, width));
+    }
+
+    public void putBitmap(String url, int width, Bitmap bitmap) {
+        mMemoryCache.put(makeMemoryKey(url, width), bitmap);
+    }
+
+    /**
+     * @return the downloaded file for the URL, or null if it isn't cached.
+     *         The file may be evicted at any time, so it should be opened
+     *         right away.
+     */
+    public synchronized File getFile(String url) {
+        ensureInitialized();
+        String name = ApiHelpers.md5(url);
+        if (!mDiskEntries.containsKey(name)) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        if (!file.exists()) {
+            removeEntry(name);
+            return null;
+        }
+        // touch entry to update LRU order
+        mDiskEntries.get(name);
+        return file;
+    }
+
+    /**
+     * Saves the stream's contents as the file for the URL and closes the stream.
+     *
+     * @return the saved file, or null if saving failed
+     */
+    public File putFile(String url, InputStream is) {
+        synchronized (this) {
+            ensureInitialized();
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                return null;
+            }
+        }
+
+        String name = ApiHelpers.md5(url);
+        File tempFile = new File(mDirectory,
+                name + "." + Thread.currentThread().getId() + SUFFIX_TEMP);
+        if (!FileUtils.save(tempFile, is)) {
+            tempFile.delete();
+            return null;
+        }
+        synchronized (this) {
+            File target = new File(mDirectory, name);
+            if (!tempFile.renameTo(target)) {
+                tempFile.delete();
+                return null;
+            }
+            Long oldSize = mDiskEntries.put(name, target.length());
+            if (oldSize != null) {
+                mDiskSize -= oldSize;
+            }
+            mDiskSize += target.length();
+            trimToSize(name);
+            return target;
+        }
+    }
+
+    /**
+     * Drops all cached images, as they may come from private repositories
+     * (e.g. on logout). Must not be called on the main thread.
+     */
+    public synchronized void clear() {
+        mMemoryCache.evictAll();
+        ensureInitialized();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDiskEntries.clear();
+        mDiskSize = 0;
+    }
+
+    private static String makeMemoryKey(String url, int width) {
+        return width + "|" + url;
+    }
+
+    private void ensureInitialized() {
+        if (mDiskEntries != null) {
+            return;
+        }
+        mDiskEntries = new LinkedHashMap<>(32, 0.75f, true);
+        mDiskSize = 0;
+
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX_TEMP)) {
+                // leftover from an interrupted write
+                file.delete();
+            } else {
+                mDiskEntries.put(file.getName(), file.length());
+                mDiskSize += file.length();
+            }
+        }
+        trimToSize(null);
+    }
+
+    private void removeEntry(String name) {
+        Long size = mDiskEntries.remove(name);
+        if (size != null) {
+            mDiskSize -= size;
+        }
+        new File(mDirectory, name).delete();
+    }
+
+    /**
+     * @param keep entry that is about to be used and thus must not be evicted,
+     *             even if it exceeds the budget on its own
+     */
+    private void trimToSize(String keep) {
+        Iterator<Map.Entry<String, Long>> iter = mDiskEntries.entrySet().iterator();
+        while (mDiskSize > MAX_DISK_SIZE && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            new File(mDirectory, entry.getKey()).delete();
+            mDiskSize -= entry.getValue();
+            iter.remove();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.gh4a.utils;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.v4.util.LruCache;
+import android.text.Html.ImageGetter;
+import android.util.Log;
+
+import com.gh4a.Gh4Application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Cache for the rendered bodies of comments, so that their HTML doesn't need
+ * to be parsed again on every visit. Bodies are rendered (or fetched from the
+ * cache) by the loaders on their background thread.
+ *
+ * The memory tier is looked up when binding, by object id, and is validated
+ * against the HTML to be bound. The disk tier is keyed by comment id, update
+ * timestamp and theme, and stores the text in the format written by
+ * {@link HtmlUtils#writeEncoded}.
+ */
+public class RenderedHtmlCache {
+    private static final String TAG = "RenderedHtmlCache";
+
+    private static final String DIR_NAME = "rendered-html";
+    private static final String SUFFIX_TEMP = ".tmp";
+    private static final int FORMAT_VERSION = 1;
+    private static final long MAX_DISK_SIZE = 5 * 1024 * 1024;
+    private static final int WRITES_PER_TRIM = 100;
+
+    // Sized by HTML length, as that's roughly proportional to the number of spans
+    private static final int MAX_MEMORY_HTML_LENGTH = 1024 * 1024;
+
+    private static class Entry {
+        final String mHtml;
+        final CharSequence mText;
+
+        Entry(String html, CharSequence text) {
+            mHtml = html;
+            mText = text;
+        }
+    }
+
+    private static final LruCache<Object, Entry> sMemoryCache =
+            new LruCache<Object, Entry>(MAX_MEMORY_HTML_LENGTH) {
+        @Override
+        protected int sizeOf(Object key, Entry value) {
+            return Math.max(1, value.mHtml.length());
+        }
+    };
+
+    // The image spans are replaced by the binding getter's placeholders anyway
+    private static final ImageGetter PLACEHOLDER_GETTER = new ImageGetter() {
+        @Override
+        public Drawable getDrawable(String source) {
+            return new ColorDrawable(Color.TRANSPARENT);
+        }
+    };
+
+    private static int sWritesUntilTrim;
+
+    private RenderedHtmlCache() {
+    }
+
+    /**
+     * @return the rendered text for the object, or null if there's none
+     *         for the given HTML. Image spans contain placeholders, which
+     *         need to be replaced before displaying the text.
+     */
+    public static CharSequence get(Object id, String html) {
+        Entry entry = sMemoryCache.get(id);
+        return entry != null && entry.mHtml.equals(html) ? entry.mText : null;
+    }
+
+    /**
+     * Makes sure the rendered body of the comment is in the memory tier,
+     * rendering it if it's in neither tier. Must not be called on the main thread.
+     */
+    public static void prerender(Context context, long id, Date updatedAt, String html) {
+        if (html == null || get(id, html) != null) {
+            return;
+        }
+
+        File file = updatedAt != null ? getFile(context, id, updatedAt) : null;
+        CharSequence text = file != null ? read(context, file, html) : null;
+        if (text == null) {
+            text = HtmlUtils.encode(context, html, PLACEHOLDER_GETTER);
+            if (file != null) {
+                write(file, html, text);
+            }
+        }
+        sMemoryCache.put(id, new Entry(html, text));
+    }
+
+    /**
+     * Deletes the disk tier, e.g. on logout. Must not be called on the main thread.
+     */
+    public static synchronized void clear(Context context) {
+        sMemoryCache.evictAll();
+        File[] files = new File(context.getCacheDir(), DIR_NAME).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static File getFile(Context context, long id, Date updatedAt) {
+        String name = id + "-" + updatedAt.getTime() + "-" + Gh4Application.THEME;
+        return new File(new File(context.getCacheDir(), DIR_NAME), name);
+    }
+
+    private static CharSequence read(Context context, File file, String html) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || in.readInt() != html.hashCode()) {
+                // outdated format, or the HTML was rendered differently
+                throw new IOException("Outdated cache entry");
+            }
+            CharSequence text = HtmlUtils.readEncoded(in,
+                    context.getResources(), PLACEHOLDER_GETTER);
+            // keep track of usage for trimming
+            file.setLastModified(System.currentTimeMillis());
+            return text;
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "Dropping unusable cache entry " + file, e);
+            file.delete();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    private static void write(File file, String html, CharSequence text) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(dir,
+                file.getName() + "." + Thread.currentThread().getId() + SUFFIX_TEMP);
+        DataOutputStream out = null;
+        boolean success = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(html.hashCode());
+            HtmlUtils.writeEncoded(out, text);
+            out.close();
+            out = null;
+            success = tempFile.renameTo(file);
+        } catch (IOException e) {
+            Log.d(TAG, "Could not write cache entry " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+
+        if (success && shouldTrim()) {
+            trim(dir);
+        }
+    }
+
+    private static synchronized boolean shouldTrim() {
+        if (sWritesUntilTrim > 0) {
+            sWritesUntilTrim--;
+            return false;
+        }
+        sWritesUntilTrim = WRITES_PER_TRIM;
+        return true;
+    }
+
+    /**
+     * Deletes the least recently used entries until the disk tier fits its budget.
+     */
+    private static synchronized void trim(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_DISK_SIZE) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > MAX_DISK_SIZE; i++) {
+            size -= files[i].length();
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.gh4a.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A list made of pages, of which only the pages around the most recently
+ * accessed position are kept in memory. Pages further away are written to
+ * disk and read back in the background once accesses come close to them
+ * again, so memory usage stays about the same no matter how long the list
+ * grows. Pages that can't be serialized simply stay in memory.
+ *
+ * Pages are never read on the accessing thread: items of pages which
+ * aren't back in memory yet are returned as null, and the
+ * {@link OnItemsLoadedListener} is told once they're available.
+ *
+ * Must only be used from the main thread. Only appending pages and clearing
+ * the list is supported as modification.
+ */
+public class WindowedList<T> extends AbstractList<T> {
+    private static final String TAG = "WindowedList";
+
+    private static final ExecutorService sIoExecutor = Executors.newSingleThreadExecutor();
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    private static final String STORAGE_DIR_NAME = "paged-lists";
+    private static boolean sStaleStorageRemoved;
+
+    private final File mDirectory;
+    private final int mPagesAround;
+    private OnItemsLoadedListener mItemsLoadedListener;
+
+    public interface OnItemsLoadedListener {
+        void onItemsLoaded(int start, int count);
+    }
+
+    private static class Page<T> {
+        final int offset;
+        // null while swapped out
+        List<T> contents;
+        boolean onDisk;
+        boolean ioPending;
+        // whether null was returned for any of the items while swapped out
+        boolean placeholdersReturned;
+
+        Page(int offset, List<T> contents) {
+            this.offset = offset;
+            this.contents = contents;
+        }
+    }
+
+    private final ArrayList<Page<T>> mPages = new ArrayList<>();
+    private int mSize;
+    private int mCenterPage = -1;
+    // Incremented on clear(), so results of I/O started before are dropped
+    private int mGeneration;
+
+    /**
+     * @param directory   directory to store swapped out pages in; it's owned by the list
+     * @param pagesAround number of pages kept in memory at each side of the accessed page
+     */
+    public WindowedList(File directory, int pagesAround) {
+        mDirectory = directory;
+        mPagesAround = pagesAround;
+    }
+
+    /**
+     * @return a new directory to be passed to the constructor
+     */
+    public static synchronized File createStorageDirectory(Context context) {
+        // Not using the cache dir, as the system may purge it while we use the files
+        File baseDir = new File(context.getFilesDir(), STORAGE_DIR_NAME);
+        if (!sStaleStorageRemoved) {
+            // Leftovers of a previous process can't be in use anymore
+            final File[] staleDirs = baseDir.listFiles();
+            if (staleDirs != null) {
+                sIoExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (File dir : staleDirs) {
+                            deleteDirectory(dir);
+                        }
+                    }
+                });
+            }
+            sStaleStorageRemoved = true;
+        }
+        return new File(baseDir, UUID.randomUUID().toString());
+    }
+
+    public void setOnItemsLoadedListener(OnItemsLoadedListener listener) {
+        mItemsLoadedListener = listener;
+    }
+
+    /**
+     * @return the item, or null if its page is still being read back from disk
+     */
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+        int pageIndex = findPage(index);
+        moveWindow(pageIndex);
+        Page<T> page = mPages.get(pageIndex);
+        if (page.contents == null) {
+            // The background read didn't make it in time (or failed, so retry it)
+            if (!page.ioPending) {
+                startRead(pageIndex, page);
+            }
+            page.placeholdersReturned = true;
+            return null;
+        }
+        return page.contents.get(index - page.offset);
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean add(T object) {
+        return addAll(Arrays.asList(object));
+    }
+
+    /**
+     * Appends the collection as a new page.
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> page) {
+        if (page.isEmpty()) {
+            return false;
+        }
+        int index = mPages.size();
+        mPages.add(new Page<T>(mSize, new ArrayList<T>(page)));
+        mSize += page.size();
+        modCount++;
+        if (mCenterPage >= 0) {
+            updatePage(index);
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        mPages.clear();
+        mSize = 0;
+        mCenterPage = -1;
+        mGeneration++;
+        modCount++;
+        deleteFiles();
+    }
+
+    /**
+     * Deletes all data written to disk. The list must not be used afterwards.
+     */
+    public void release() {
+        clear();
+    }
+
+    private int findPage(int index) {
+        int low = 0, high = mPages.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            if (mPages.get(mid).offset <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void moveWindow(int page) {
+        if (page == mCenterPage) {
+            return;
+        }
+        mCenterPage = page;
+        for (int i = 0; i < mPages.size(); i++) {
+            updatePage(i);
+        }
+    }
+
+    private void updatePage(int pageIndex) {
+        Page<T> page = mPages.get(pageIndex);
+        boolean inWindow = Math.abs(pageIndex - mCenterPage) <= mPagesAround;
+        if (page.ioPending) {
+            // will be re-evaluated once the I/O is done
+            return;
+        }
+        if (inWindow && page.contents == null) {
+            startRead(pageIndex, page);
+        } else if (!inWindow && page.contents != null) {
+            if (page.onDisk) {
+                // pages never change, so the file is still valid
+                page.contents = null;
+            } else {
+                startWrite(pageIndex, page);
+            }
+        }
+    }
+
+    private void startWrite(final int pageIndex, final Page<T> page) {
+        final List<T> contents = page.contents;
+        final int generation = mGeneration;
+        page.ioPending = true;
+        sIoExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final boolean success = writePage(pageIndex, contents);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        page.ioPending = false;
+                        if (success) {
+                            page.onDisk = true;
+                            updatePage(pageIndex);
+                        }
+                        // otherwise keep the page in memory
+                    }
+                });
+            }
+        });
+    }
+
+    private void startRead(final int pageIndex, final Page<T> page) {
+        final int generation = mGeneration;
+        page.ioPending = true;
+        sIoExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> contents = readPage(pageIndex);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        page.ioPending = false;
+                        if (contents == null) {
+                            // don't retry right away, get() will try again if needed
+                            return;
+                        }
+                        if (page.contents == null) {
+                            page.contents = contents;
+                            if (page.placeholdersReturned && mItemsLoadedListener != null) {
+                                mItemsLoadedListener.onItemsLoaded(page.offset, contents.size());
+                            }
+                            page.placeholdersReturned = false;
+                        }
+                        updatePage(pageIndex);
+                    }
+                });
+            }
+        });
+    }
+
+    private File getPageFile(int page) {
+        return new File(mDirectory, "page-" + page);
+    }
+
+    private boolean writePage(int page, List<T> contents) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return false;
+        }
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(getPageFile(page))));
+            out.writeObject(contents);
+            return true;
+        } catch (IOException e) {
+            // most likely the items aren't serializable
+            Log.d(TAG, "Could not swap out page " + page, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> readPage(int page) {
+        ObjectInputStream in = null;
+        try {
+            in = new ObjectInputStream(new BufferedInputStream(
+                    new FileInputStream(getPageFile(page))));
+            return (List<T>) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            Log.w(TAG, "Could not read back page " + page, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+    }
+
+    private void deleteFiles() {
+        sIoExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deleteDirectory(mDirectory);
+            }
+        });
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}